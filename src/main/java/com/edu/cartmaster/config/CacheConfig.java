@@ -0,0 +1,43 @@
+package com.edu.cartmaster.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Caches de lectura (Caffeine, desalojo W-TinyLFU acotado por tamano y con TTL). Las estadisticas quedan
+// habilitadas para que Actuator publique aciertos y fallos (cache.gets) de cada cache.
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String TARJETAS = "tarjetas";
+    public static final String CLIENTES = "clientes";
+    public static final String TARJETAS_POR_CLIENTE = "tarjetasPorCliente";
+    // tarjetaId -> clienteId; el dueno de una tarjeta no cambia, se usa para invalidar la lista del cliente
+    public static final String CLIENTE_POR_TARJETA = "clientePorTarjeta";
+    // Agregados de la cartera por dimension; solo expiran por TTL (ver TarjetaService.obtenerAgregados)
+    public static final String AGREGADOS = "agregadosTarjetas";
+
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${cartmaster.cache.tarjetas:maximumSize=50000,expireAfterWrite=10m}") String tarjetas,
+            @Value("${cartmaster.cache.clientes:maximumSize=20000,expireAfterWrite=30m}") String clientes,
+            @Value("${cartmaster.cache.tarjetas-por-cliente:maximumSize=20000,expireAfterWrite=10m}") String tarjetasPorCliente,
+            @Value("${cartmaster.cache.cliente-por-tarjeta:maximumSize=100000}") String clientePorTarjeta,
+            @Value("${cartmaster.cache.agregados:maximumSize=10,expireAfterWrite=30s}") String agregados) {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        manager.setAllowNullValues(false);
+        manager.registerCustomCache(TARJETAS, Caffeine.from(tarjetas).recordStats().build());
+        manager.registerCustomCache(CLIENTES, Caffeine.from(clientes).recordStats().build());
+        manager.registerCustomCache(TARJETAS_POR_CLIENTE, Caffeine.from(tarjetasPorCliente).recordStats().build());
+        manager.registerCustomCache(CLIENTE_POR_TARJETA, Caffeine.from(clientePorTarjeta).recordStats().build());
+        manager.registerCustomCache(AGREGADOS, Caffeine.from(agregados).recordStats().build());
+        // Dentro de una transaccion los desalojos se aplican despues del commit, para no recargar datos sin confirmar
+        return new TransactionAwareCacheManagerProxy(manager);
+    }
+}
@@ -0,0 +1,41 @@
+package com.edu.cartmaster.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Envuelve el DataSource del pool con datasource-proxy para observar las sentencias SQL sin show-sql:
+// conteo por peticion (ContadorSql) y registro de consultas lentas. Sin ninguno de los dos no se envuelve nada.
+@Configuration
+public class ConsultasSqlConfig {
+
+    @Bean
+    public static BeanPostProcessor proxyDataSource(
+            @Value("${cartmaster.sql.contador.habilitado:false}") boolean contador,
+            @Value("${cartmaster.sql.lentas.umbral-ms:0}") long umbralMs,
+            @Value("${cartmaster.sql.lentas.muestreo:1.0}") double muestreo,
+            ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String nombre) {
+                if (!(bean instanceof DataSource dataSource) || (!contador && umbralMs <= 0)) {
+                    return bean;
+                }
+                ProxyDataSourceBuilder builder = ProxyDataSourceBuilder.create(nombre, dataSource);
+                if (contador) {
+                    builder.listener(new ContadorSql());
+                }
+                if (umbralMs > 0) {
+                    builder.listener(new RegistroConsultasLentas(umbralMs, muestreo, registry));
+                }
+                return builder.build();
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.edu.cartmaster.config;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+
+// Cuenta las sentencias SQL ejecutadas por el hilo de la peticion en curso (y su tiempo total).
+// Solo cuenta entre iniciar() y finalizar(); fuera de una peticion (tareas de fondo, exportacion asincrona) no hace nada.
+public class ContadorSql implements QueryExecutionListener {
+
+    private static final ThreadLocal<Medicion> ACTUAL = new ThreadLocal<>();
+
+    public static void iniciar() {
+        ACTUAL.set(new Medicion());
+    }
+
+    public static Medicion actual() {
+        return ACTUAL.get();
+    }
+
+    public static Medicion finalizar() {
+        Medicion medicion = ACTUAL.get();
+        ACTUAL.remove();
+        return medicion;
+    }
+
+    public static void registrar(int sentencias, long tiempoMs) {
+        Medicion medicion = ACTUAL.get();
+        if (medicion != null) {
+            medicion.sentencias += sentencias;
+            medicion.tiempoMs += tiempoMs;
+        }
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        registrar(queryInfoList.size(), execInfo.getElapsedTime());
+    }
+
+    public static class Medicion {
+        private int sentencias;
+        private long tiempoMs;
+
+        public int getSentencias() {
+            return sentencias;
+        }
+
+        public long getTiempoMs() {
+            return tiempoMs;
+        }
+    }
+}
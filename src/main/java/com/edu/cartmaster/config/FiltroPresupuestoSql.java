@@ -0,0 +1,164 @@
+package com.edu.cartmaster.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+// Mide las sentencias SQL de cada peticion (ContadorSql) y las compara con el presupuesto de su ruta
+// ("METODO /patron=maximo"), para detectar regresiones como cargas N+1. En desarrollo agrega las cabeceras
+// X-Sql-Count y X-Sql-Time-Ms, que se fijan justo antes de escribir el cuerpo; las cargas perezosas durante la
+// serializacion quedan fuera de las cabeceras pero si cuentan para el presupuesto. En modo fallar el presupuesto
+// tambien se revisa antes de escribir el cuerpo, mientras la respuesta aun puede cambiar a error; lo que se excede
+// despues de enviada la respuesta solo queda en el log.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cartmaster.sql.contador.habilitado", havingValue = "true")
+public class FiltroPresupuestoSql extends OncePerRequestFilter {
+
+    public static final String CABECERA_CONTEO = "X-Sql-Count";
+    public static final String CABECERA_TIEMPO = "X-Sql-Time-Ms";
+
+    private final boolean cabeceras;
+    private final boolean fallar;
+    private final int presupuestoPorDefecto;
+    private final Map<String, Integer> presupuestos;
+
+    public FiltroPresupuestoSql(@Value("${cartmaster.sql.contador.cabeceras:false}") boolean cabeceras,
+                                @Value("${cartmaster.sql.presupuesto.modo:log}") String modo,
+                                @Value("${cartmaster.sql.presupuesto.por-defecto:0}") int presupuestoPorDefecto,
+                                @Value("${cartmaster.sql.presupuesto.rutas:}") String rutas) {
+        if (!modo.equals("log") && !modo.equals("fallar")) {
+            throw new IllegalArgumentException("Modo de presupuesto SQL inválido: " + modo);
+        }
+        this.cabeceras = cabeceras;
+        this.fallar = modo.equals("fallar");
+        this.presupuestoPorDefecto = presupuestoPorDefecto;
+        this.presupuestos = presupuestos(rutas);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ContadorSql.iniciar();
+        ContadorSql.Medicion medicion;
+        try {
+            chain.doFilter(request, cabeceras || fallar ? new RespuestaVigilada(request, response) : response);
+        } finally {
+            medicion = ContadorSql.finalizar();
+        }
+        if (cabeceras && !response.isCommitted()) {
+            agregarCabeceras(response, medicion);
+        }
+        // La exportacion asincrona continua en otro hilo; su conteo no se atribuye a la peticion
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        String exceso = excesoDePresupuesto(request, medicion);
+        if (exceso == null) {
+            return;
+        }
+        if (fallar && !response.isCommitted()) {
+            throw new IllegalStateException(exceso);
+        }
+        log.warn(exceso);
+    }
+
+    // Mensaje si la ruta de la peticion supera su presupuesto, o null
+    private String excesoDePresupuesto(HttpServletRequest request, ContadorSql.Medicion medicion) {
+        Object patron = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (patron == null) {
+            return null;
+        }
+        String ruta = request.getMethod() + " " + patron;
+        int maximo = presupuestos.getOrDefault(ruta, presupuestoPorDefecto);
+        if (maximo <= 0 || medicion.getSentencias() <= maximo) {
+            return null;
+        }
+        return "Presupuesto SQL excedido en " + ruta + ": " + medicion.getSentencias()
+                + " sentencias (máximo " + maximo + ")";
+    }
+
+    private static void agregarCabeceras(HttpServletResponse response, ContadorSql.Medicion medicion) {
+        response.setHeader(CABECERA_CONTEO, String.valueOf(medicion.getSentencias()));
+        response.setHeader(CABECERA_TIEMPO, String.valueOf(medicion.getTiempoMs()));
+    }
+
+    // "GET /api/tarjetas/{tarjetaId}=1,GET /api/tarjetas=1"
+    static Map<String, Integer> presupuestos(String rutas) {
+        Map<String, Integer> presupuestos = new HashMap<>();
+        for (String entrada : rutas.split(",")) {
+            if (entrada.isBlank()) {
+                continue;
+            }
+            int separador = entrada.lastIndexOf('=');
+            if (separador < 0) {
+                throw new IllegalArgumentException("Presupuesto SQL inválido: " + entrada);
+            }
+            presupuestos.put(entrada.substring(0, separador).trim(),
+                    Integer.parseInt(entrada.substring(separador + 1).trim()));
+        }
+        return presupuestos;
+    }
+
+    // Al empezar a escribir el cuerpo fija las cabeceras con el conteo hasta ese momento y, en modo fallar,
+    // corta la peticion si ya excedio el presupuesto
+    private class RespuestaVigilada extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private boolean revisada;
+
+        RespuestaVigilada(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            revisar();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            revisar();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            revisar();
+            super.flushBuffer();
+        }
+
+        private void revisar() {
+            ContadorSql.Medicion medicion = ContadorSql.actual();
+            if (revisada || medicion == null || isCommitted()) {
+                return;
+            }
+            revisada = true;
+            if (cabeceras) {
+                agregarCabeceras((HttpServletResponse) getResponse(), medicion);
+            }
+            if (fallar) {
+                String exceso = excesoDePresupuesto(request, medicion);
+                if (exceso != null) {
+                    throw new IllegalStateException(exceso);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.edu.cartmaster.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+// Registro de consultas lentas: toda sentencia que supera el umbral se cuenta (cartmaster.sql.lentas) y solo una
+// muestra se escribe en el log, con los numeros de tarjeta y los hashes de contrasena enmascarados.
+@Slf4j(topic = "cartmaster.sql.lentas")
+class RegistroConsultasLentas implements QueryExecutionListener {
+
+    // 13 a 19 digitos, opcionalmente separados por espacios o guiones
+    private static final Pattern NUMERO_TARJETA = Pattern.compile("^\\d(?:[ -]?\\d){12,18}$");
+    private static final Pattern HASH_BCRYPT = Pattern.compile("^\\$2[aby]?\\$\\d\\d\\$.{53}$");
+    private static final int MAXIMO_PARAMETRO = 64;
+
+    private final long umbralMs;
+    private final double muestreo;
+    private final ObjectProvider<MeterRegistry> registry;
+    private volatile Counter lentas;
+
+    RegistroConsultasLentas(long umbralMs, double muestreo, ObjectProvider<MeterRegistry> registry) {
+        this.umbralMs = umbralMs;
+        this.muestreo = muestreo;
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long duracionMs = execInfo.getElapsedTime();
+        if (duracionMs < umbralMs) {
+            return;
+        }
+        contador().increment();
+        if (ThreadLocalRandom.current().nextDouble() >= muestreo) {
+            return;
+        }
+        for (QueryInfo consulta : queryInfoList) {
+            List<List<ParameterSetOperation>> parametros = consulta.getParametersList();
+            log.warn("Consulta lenta ({} ms, lote={}): {} parametros={}", duracionMs, parametros.size(),
+                    consulta.getQuery(), parametros.isEmpty() ? List.of() : parametros(parametros.get(0)));
+        }
+    }
+
+    // Valores de la primera fila de parametros, en el orden en que se asignaron
+    static List<Object> parametros(List<ParameterSetOperation> operaciones) {
+        List<Object> valores = new ArrayList<>();
+        for (ParameterSetOperation op : operaciones) {
+            Object[] args = op.getArgs();
+            valores.add(ParameterSetOperation.isSetNullParameterOperation(op) || args.length < 2
+                    ? null : redactar(args[1]));
+        }
+        return valores;
+    }
+
+    static Object redactar(Object valor) {
+        if (!(valor instanceof String texto)) {
+            return valor;
+        }
+        if (NUMERO_TARJETA.matcher(texto).matches()) {
+            String digitos = texto.replaceAll("[ -]", "");
+            return "****" + digitos.substring(digitos.length() - 4);
+        }
+        if (HASH_BCRYPT.matcher(texto).matches()) {
+            return "****";
+        }
+        return texto.length() > MAXIMO_PARAMETRO ? texto.substring(0, MAXIMO_PARAMETRO) + "..." : texto;
+    }
+
+    private Counter contador() {
+        Counter actual = lentas;
+        if (actual == null) {
+            actual = Counter.builder("cartmaster.sql.lentas")
+                    .description("Sentencias SQL que superaron el umbral de consulta lenta")
+                    .register(registry.getObject());
+            lentas = actual;
+        }
+        return actual;
+    }
+}
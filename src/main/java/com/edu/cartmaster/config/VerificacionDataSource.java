@@ -0,0 +1,91 @@
+package com.edu.cartmaster.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+// Al iniciar registra en el log la configuracion efectiva del pool (Hikari), del driver MySQL y del batch
+// de Hibernate, para confirmar que el perfil activo aplico el ajuste. Las metricas del pool (hikaricp.*) las
+// publica Actuator; aqui se agregan los contadores de sentencias preparadas del servidor cuando se habilitan.
+@Slf4j
+@Component
+public class VerificacionDataSource {
+
+    private static final List<String> PROPIEDADES_DRIVER = List.of("cachePrepStmts", "useServerPrepStmts",
+            "prepStmtCacheSize", "prepStmtCacheSqlLimit", "rewriteBatchedStatements");
+    private static final List<String> PROPIEDADES_HIBERNATE = List.of("hibernate.jdbc.batch_size",
+            "hibernate.order_inserts", "hibernate.order_updates", "hibernate.query.in_clause_parameter_padding");
+
+    private final DataSource dataSource;
+    private final JpaProperties jpaProperties;
+
+    public VerificacionDataSource(DataSource dataSource, JpaProperties jpaProperties, MeterRegistry registry,
+                                  @Value("${cartmaster.jdbc.metricas-sentencias:false}") boolean metricasSentencias) {
+        this.dataSource = dataSource;
+        this.jpaProperties = jpaProperties;
+        if (metricasSentencias) {
+            registrarMetricasSentencias(registry, new JdbcTemplate(dataSource));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registrarConfiguracion() throws SQLException {
+        if (dataSource.isWrapperFor(HikariDataSource.class)) {
+            HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+            log.info("Pool {}: maximo={} minimoInactivas={} esperaConexionMs={} vidaMaximaMs={}",
+                    hikari.getPoolName(), hikari.getMaximumPoolSize(), hikari.getMinimumIdle(),
+                    hikari.getConnectionTimeout(), hikari.getMaxLifetime());
+            Properties driver = hikari.getDataSourceProperties();
+            log.info("Driver JDBC: {}", valores(PROPIEDADES_DRIVER, driver::getProperty));
+        } else {
+            log.info("DataSource sin pool Hikari: {}", dataSource.getClass().getName());
+        }
+        Map<String, String> hibernate = jpaProperties.getProperties();
+        log.info("Hibernate: {}", valores(PROPIEDADES_HIBERNATE, hibernate::get));
+    }
+
+    // Contadores globales del servidor MySQL. Con cachePrepStmts + useServerPrepStmts cada conexion reutiliza sus
+    // sentencias preparadas, por lo que Com_stmt_prepare debe crecer mucho mas lento que Com_stmt_execute.
+    private static void registrarMetricasSentencias(MeterRegistry registry, JdbcTemplate jdbcTemplate) {
+        Map.of("Com_stmt_prepare", "cartmaster.jdbc.sentencias.preparadas",
+                        "Com_stmt_execute", "cartmaster.jdbc.sentencias.ejecutadas",
+                        "Prepared_stmt_count", "cartmaster.jdbc.sentencias.abiertas")
+                .forEach((variable, metrica) -> Gauge.builder(metrica, () -> estadoServidor(jdbcTemplate, variable))
+                        .description("Variable " + variable + " del servidor MySQL (SHOW GLOBAL STATUS)")
+                        .register(registry));
+    }
+
+    private static double estadoServidor(JdbcTemplate jdbcTemplate, String variable) {
+        try {
+            List<Double> valores = jdbcTemplate.query("SHOW GLOBAL STATUS LIKE ?",
+                    (rs, fila) -> rs.getDouble(2), variable);
+            return valores.isEmpty() ? Double.NaN : valores.get(0);
+        } catch (RuntimeException e) {
+            // Sin conexion no se bloquea la publicacion de las demas metricas
+            return Double.NaN;
+        }
+    }
+
+    private static String valores(List<String> claves, Function<String, Object> lector) {
+        StringBuilder texto = new StringBuilder();
+        for (String clave : claves) {
+            Object valor = lector.apply(clave);
+            texto.append(clave).append('=').append(valor != null ? valor : "(sin definir)").append(' ');
+        }
+        return texto.toString().trim();
+    }
+}
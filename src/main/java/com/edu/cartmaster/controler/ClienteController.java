@@ -1,9 +1,13 @@
 package com.edu.cartmaster.controler;
 
+import com.edu.cartmaster.dto.ClienteRespuesta;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Cliente;
-import com.edu.cartmaster.model.Tarjeta;
 import com.edu.cartmaster.service.ClienteService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -11,6 +15,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/clientes")
@@ -19,23 +24,50 @@ public class ClienteController {
 
     private final ClienteService clienteService;
 
+    @Value("${cartmaster.lote.maximo-filas:50000}")
+    private int maximoFilasLote;
+
     //EndPoint de registro
     @PostMapping("/registro")
     public ResponseEntity<?> registrarCliente(@RequestBody Cliente cliente) {
         try {
-            Cliente nuevo = clienteService.registrarCliente(cliente);
+            ClienteRespuesta nuevo = clienteService.registrarCliente(cliente);
             return ResponseEntity.status(HttpStatus.CREATED).body(nuevo);
-        } catch (RuntimeException e) {
+        } catch (RejectedExecutionException e) {
+            return servicioSaturado();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (DuplicateKeyException e) {
+            // Solo el correo repetido es un conflicto; las demas violaciones de integridad son errores del servidor
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
+    //EndPoint de registro masivo; responde con el resultado de cada fila
+    @PostMapping("/registro/lote")
+    public ResponseEntity<?> registrarClientesEnLote(@RequestBody List<Cliente> clientes) {
+        if (clientes.size() > maximoFilasLote) {
+            return ResponseEntity.badRequest().body("El lote supera el máximo de " + maximoFilasLote + " filas");
+        }
+        try {
+            ResultadoLote resultado = clienteService.registrarClientesEnLote(clientes);
+            return ResponseEntity.ok(resultado);
+        } catch (RejectedExecutionException e) {
+            return servicioSaturado();
+        }
+    }
+
     //EndPont de login
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody Map<String, String> credenciales) {
         String correo = credenciales.get("correo");
         String contrasena = credenciales.get("contrasena");
 
-        Map<String, Object> resultado = clienteService.login(correo, contrasena);
+        Map<String, Object> resultado;
+        try {
+            resultado = clienteService.login(correo, contrasena);
+        } catch (RejectedExecutionException e) {
+            return servicioSaturado();
+        }
 
         if (resultado == null) {
             // Credenciales inválidas
@@ -61,8 +93,8 @@ public class ClienteController {
 
     //EndPoint que trae todas las targetas de un usuario
     @GetMapping("/{id}/tarjetas")
-    public ResponseEntity<List<Tarjeta>> obtenerTarjetas(@PathVariable Integer id) {
-        List<Tarjeta> tarjetas = clienteService.obtenerTarjetasPorClienteId(id);
+    public ResponseEntity<List<TarjetaRespuesta>> obtenerTarjetas(@PathVariable Integer id) {
+        List<TarjetaRespuesta> tarjetas = clienteService.obtenerTarjetasPorClienteId(id);
         return ResponseEntity.ok(tarjetas);
     }
 
@@ -77,4 +109,18 @@ public class ClienteController {
         }
     }
 
+    //Controlador para eliminar varios clientes y todas sus tarjetas (procesos de purga)
+    @PostMapping("/eliminacion/lote")
+    public ResponseEntity<Map<String, Integer>> eliminarClientes(@RequestBody List<Integer> clienteIds) {
+        int eliminados = clienteService.eliminarClientesYTarjetas(clienteIds);
+        return ResponseEntity.ok(Map.of("eliminados", eliminados));
+    }
+
+    // El pool de hash de contrasenas esta lleno; el cliente debe reintentar mas tarde
+    private ResponseEntity<Map<String, String>> servicioSaturado() {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "SERVICIO_SATURADO");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(error);
+    }
+
 }
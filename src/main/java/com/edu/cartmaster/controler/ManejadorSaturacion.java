@@ -0,0 +1,38 @@
+package com.edu.cartmaster.controler;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+
+// Sin conexion disponible en el pool dentro de connection-timeout: se responde 503 para que el cliente
+// reintente, igual que con el pool de hash lleno. Otras fallas de conexion (base de datos caida,
+// credenciales) no son saturacion y siguen como error del servidor.
+@RestControllerAdvice
+public class ManejadorSaturacion {
+
+    @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<Map<String, String>> sinConexion(RuntimeException e) {
+        if (!esEsperaDelPool(e)) {
+            throw e;
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .body(Map.of("error", "SERVICIO_SATURADO"));
+    }
+
+    // Hikari reporta el connection-timeout como SQLTransientConnectionException
+    private static boolean esEsperaDelPool(Throwable e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SQLTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,17 +1,34 @@
 package com.edu.cartmaster.controler;
 
+import com.edu.cartmaster.dto.CambioEstadoLote;
+import com.edu.cartmaster.dto.CambiosTarjeta;
+import com.edu.cartmaster.dto.EmisionTarjeta;
+import com.edu.cartmaster.dto.FiltroTarjetas;
+import com.edu.cartmaster.dto.PaginaCursor;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.TarjetaConCliente;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Tarjeta;
+import com.edu.cartmaster.service.AgrupacionTarjetas;
+import com.edu.cartmaster.service.Montos;
+import com.edu.cartmaster.service.ResultadoCupo;
 import com.edu.cartmaster.service.TarjetaService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 
 @RestController
@@ -22,61 +39,118 @@ public class TarjetaController {
     @Autowired
     private TarjetaService tarjetaService;
 
+    @Value("${cartmaster.paginacion.tamano-por-defecto:50}")
+    private int tamanoPorDefecto;
+
+    @Value("${cartmaster.paginacion.tamano-maximo:500}")
+    private int tamanoMaximo;
+
+    @Value("${cartmaster.lote.maximo-filas:50000}")
+    private int maximoFilasLote;
+
     @GetMapping
-    public ResponseEntity<List<Tarjeta>> obtenerTodasLasTarjetas() {
-        List<Tarjeta> tarjetas = tarjetaService.obtenerTodasLasTarjetas();
-        return ResponseEntity.ok(tarjetas);
+    public ResponseEntity<PaginaCursor<TarjetaRespuesta>> obtenerTodasLasTarjetas(
+            @RequestParam(required = false) Integer desde,
+            @RequestParam(required = false) Integer tamano) {
+        PaginaCursor<TarjetaRespuesta> pagina = tarjetaService.obtenerTarjetasPaginadas(desde, tamanoPagina(tamano));
+        return ResponseEntity.ok(pagina);
+    }
+
+    //Busqueda en el servidor con filtros opcionales (estado, franquicia, vencimiento, cupos, correo del cliente)
+    @GetMapping("/buscar")
+    public ResponseEntity<?> buscarTarjetas(
+            FiltroTarjetas filtro,
+            @RequestParam(required = false) Integer desde,
+            @RequestParam(required = false) Integer tamano) {
+        try {
+            return ResponseEntity.ok(tarjetaService.buscarTarjetas(filtro, desde, tamanoPagina(tamano)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping("/cliente/{clienteId}")
-    public ResponseEntity<List<Tarjeta>> obtenerTarjetasPorCliente(@PathVariable Integer clienteId) {
-        List<Tarjeta> tarjetas = tarjetaService.obtenerTarjetasPorClienteId(clienteId);
+    public ResponseEntity<List<TarjetaRespuesta>> obtenerTarjetasPorCliente(@PathVariable Integer clienteId) {
+        List<TarjetaRespuesta> tarjetas = tarjetaService.obtenerTarjetasPorClienteId(clienteId);
         return ResponseEntity.ok(tarjetas);
     }
 
     @GetMapping("/{tarjetaId}")
-    public ResponseEntity<Tarjeta> obtenerTarjetaPorId(@PathVariable Integer tarjetaId) {
+    public ResponseEntity<TarjetaRespuesta> obtenerTarjetaPorId(@PathVariable Integer tarjetaId) {
         return tarjetaService.obtenerTarjetaPorId(tarjetaId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/con-clientes")
-    public ResponseEntity<List<Map<String, Object>>> obtenerTarjetasConClientes() {
-        List<Tarjeta> tarjetas = tarjetaService.obtenerTarjetasConClientes();
-
-        List<Map<String, Object>> resultado = tarjetas.stream()
-                .map(tarjeta -> Map.of(
-                        "tarjetaId", tarjeta.getTarjetaId(),
-                        "numeroTarjeta", tarjeta.getTarjetaNumero(),
-                        "fechaVencimiento", tarjeta.getTarjetaFechaVencimiento(),
-                        "franquicia", tarjeta.getTarjetaFranquicia(),
-                        "estado", tarjeta.getTarjetaEstado(),
-                        "cupoTotal", tarjeta.getTarjetaCupoTotal(),
-                        "cupoDisponible", tarjeta.getTarjetaCupoDisponible(),
-                        "cupoUtilizado", tarjeta.getTarjetaCupoUtilizado(),
-                        "cliente", Map.of(
-                                "id", tarjeta.getCliente().getClienteId(),
-                                "nombre", tarjeta.getCliente().getClienteNombre(),
-                                "correo", tarjeta.getCliente().getClienteCorreo()
-                        )
-                ))
-                .collect(Collectors.toList());
+    public ResponseEntity<List<TarjetaConCliente>> obtenerTarjetasConClientes() {
+        return ResponseEntity.ok(tarjetaService.obtenerTarjetasConClientes());
+    }
 
-        return ResponseEntity.ok(resultado);
+    //Totales de cupo para los tableros de administracion; por = franquicia, estado o cliente.
+    //Por cliente la respuesta es una pagina por cursor (desde = ultimo id de cliente recibido).
+    @GetMapping("/agregados")
+    public ResponseEntity<?> obtenerAgregados(
+            @RequestParam(defaultValue = "franquicia") String por,
+            @RequestParam(required = false) Integer desde,
+            @RequestParam(required = false) Integer tamano) {
+        AgrupacionTarjetas agrupacion;
+        try {
+            agrupacion = AgrupacionTarjetas.valueOf(por.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Agrupación inválida: " + por);
+        }
+        if (agrupacion == AgrupacionTarjetas.CLIENTE) {
+            return ResponseEntity.ok(tarjetaService.obtenerAgregadosPorCliente(desde, tamanoPagina(tamano)));
+        }
+        return ResponseEntity.ok(tarjetaService.obtenerAgregados(agrupacion));
+    }
+
+    //Exportacion completa en NDJSON; la respuesta se escribe mientras se leen las filas
+    @GetMapping(value = "/con-clientes/exportar", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportarTarjetasConClientes() {
+        StreamingResponseBody cuerpo = tarjetaService::exportarTarjetasConClientes;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(cuerpo);
     }
 
     @PostMapping("/crear/{clienteId}")
-    public ResponseEntity<Tarjeta> crearTarjeta(
+    public ResponseEntity<TarjetaRespuesta> crearTarjeta(
             @PathVariable Integer clienteId,
             @RequestBody Tarjeta tarjeta) {
 
-        Tarjeta nueva = tarjetaService.registrarTarjeta(tarjeta, clienteId);
+        TarjetaRespuesta nueva = tarjetaService.registrarTarjeta(tarjeta, clienteId);
         return ResponseEntity.status(HttpStatus.CREATED).body(nueva);
     }
 
+    //Emision masiva de tarjetas para uno o varios clientes; responde con el resultado de cada fila
+    @PostMapping("/lote")
+    public ResponseEntity<?> emitirTarjetasEnLote(@RequestBody List<EmisionTarjeta> emisiones) {
+        if (emisiones.size() > maximoFilasLote) {
+            return ResponseEntity.badRequest().body("El lote supera el máximo de " + maximoFilasLote + " filas");
+        }
+        ResultadoLote resultado = tarjetaService.emitirTarjetasEnLote(emisiones);
+        return ResponseEntity.ok(resultado);
+    }
+
+    //Actualizacion parcial (JSON Merge Patch): solo se escriben los campos enviados en el cuerpo
+    @PatchMapping(value = "/{tarjetaId}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> actualizarParcialmente(
+            @PathVariable Integer tarjetaId,
+            @RequestBody CambiosTarjeta cambios) {
+        Optional<TarjetaRespuesta> actualizada = tarjetaService.actualizarParcialmente(tarjetaId, cambios);
+
+        if (actualizada.isPresent()) {
+            return ResponseEntity.ok(actualizada.get());
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Tarjeta no encontrada con ID: " + tarjetaId);
+        }
+    }
+
     @PutMapping("/{tarjetaId}")
-    public ResponseEntity<Tarjeta> actualizarTarjeta(
+    public ResponseEntity<TarjetaRespuesta> actualizarTarjeta(
             @PathVariable Integer tarjetaId,
             @RequestBody Tarjeta tarjeta) {
         return tarjetaService.actualizarTarjeta(tarjetaId, tarjeta)
@@ -89,7 +163,7 @@ public class TarjetaController {
             @PathVariable Integer tarjetaId,
             @RequestBody Tarjeta tarjetaActualizada) {
 
-        Optional<Tarjeta> actualizada = tarjetaService.actualizarTarjetaConCupos(tarjetaId, tarjetaActualizada);
+        Optional<TarjetaRespuesta> actualizada = tarjetaService.actualizarTarjetaConCupos(tarjetaId, tarjetaActualizada);
 
         if (actualizada.isPresent()) {
             return ResponseEntity.ok(actualizada.get());
@@ -104,7 +178,7 @@ public class TarjetaController {
             @PathVariable Integer tarjetaId,
             @RequestBody Tarjeta tarjetaActualizada) {
 
-        Optional<Tarjeta> actualizada = tarjetaService.actualizarDatosGeneralesTarjeta(tarjetaId, tarjetaActualizada);
+        Optional<TarjetaRespuesta> actualizada = tarjetaService.actualizarDatosGeneralesTarjeta(tarjetaId, tarjetaActualizada);
 
         if (actualizada.isPresent()) {
             return ResponseEntity.ok(actualizada.get());
@@ -115,20 +189,39 @@ public class TarjetaController {
     }
 
     @DeleteMapping("/{tarjetaId}")
-    public ResponseEntity<Tarjeta> inactivarTarjeta(@PathVariable Integer tarjetaId) {
+    public ResponseEntity<TarjetaRespuesta> inactivarTarjeta(@PathVariable Integer tarjetaId) {
         return tarjetaService.inactivarTarjeta(tarjetaId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    //Cambio de estado masivo (p. ej. congelar todas las tarjetas de una franquicia); responde cuantas cambiaron
+    @PostMapping("/estado/lote")
+    public ResponseEntity<?> cambiarEstadoEnLote(@RequestBody CambioEstadoLote solicitud) {
+        if (solicitud.porIds() && solicitud.tarjetaIds().size() > maximoFilasLote) {
+            return ResponseEntity.badRequest().body("El lote supera el máximo de " + maximoFilasLote + " filas");
+        }
+        try {
+            int afectadas = tarjetaService.cambiarEstadoEnLote(solicitud);
+            return ResponseEntity.ok(Map.of("estado", solicitud.estado(), "afectadas", afectadas));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PutMapping("/actualizar_cupo_disponible/{tarjetaId}")
     public ResponseEntity<?> actualizarCupoDisponible(
             @PathVariable Integer tarjetaId,
-            @RequestBody Map<String, Double> request) {
+            @RequestBody Map<String, BigDecimal> request) {
 
-        double nuevoCupo = request.get("tarjetaCupoDisponible");
+        BigDecimal nuevoCupo = request.get("tarjetaCupoDisponible");
+        if (!Montos.esCupoValido(nuevoCupo)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "CUPO_INVALIDO"));
+        }
 
-        Optional<Tarjeta> tarjetaActualizada = tarjetaService.actualizarCupoDisponible(tarjetaId, nuevoCupo);
+        BigDecimal version = request.get("tarjetaVersion");
+        Optional<TarjetaRespuesta> tarjetaActualizada = tarjetaService.actualizarCupoDisponible(tarjetaId, nuevoCupo,
+                version != null ? version.longValue() : null);
 
         if (tarjetaActualizada.isPresent()) {
             return ResponseEntity.ok(tarjetaActualizada.get());
@@ -138,4 +231,66 @@ public class TarjetaController {
         }
     }
 
+    @PostMapping("/{tarjetaId}/consumir_cupo")
+    public ResponseEntity<?> consumirCupo(
+            @PathVariable Integer tarjetaId,
+            @RequestBody Map<String, BigDecimal> request) {
+        BigDecimal monto = request.get("monto");
+        if (!Montos.esMontoValido(monto)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "MONTO_INVALIDO"));
+        }
+        return respuestaCupo(tarjetaService.consumirCupo(tarjetaId, monto));
+    }
+
+    @PostMapping("/{tarjetaId}/reembolsar_cupo")
+    public ResponseEntity<?> reembolsarCupo(
+            @PathVariable Integer tarjetaId,
+            @RequestBody Map<String, BigDecimal> request) {
+        BigDecimal monto = request.get("monto");
+        if (!Montos.esMontoValido(monto)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "MONTO_INVALIDO"));
+        }
+        return respuestaCupo(tarjetaService.reembolsarCupo(tarjetaId, monto));
+    }
+
+    // PUT/PATCH con tarjetaVersion: otra peticion modifico la tarjeta despues de que el cliente la leyo
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, String>> versionDesactualizada(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "VERSION_DESACTUALIZADA", "mensaje", e.getMessage()));
+    }
+
+    // Numero de tarjeta repetido en la creacion, el PATCH o cualquiera de los PUT; otra restriccion es un 400
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<Map<String, String>> violacionDeIntegridad(DataIntegrityViolationException e) {
+        if (e instanceof DuplicateKeyException) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "TARJETA_DUPLICADA", "mensaje", "La tarjeta ya está registrada"));
+        }
+        return ResponseEntity.badRequest()
+                .body(Map.of("error", "CAMBIO_INVALIDO", "mensaje", "La base de datos rechazó los datos de la tarjeta"));
+    }
+
+    // Creacion, PUT o PATCH con cupos fuera de rango o disponible mayor al total, o vencimiento sin formato MM/AAAA
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> cambioInvalido(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", "CAMBIO_INVALIDO", "mensaje", e.getMessage()));
+    }
+
+    private ResponseEntity<Map<String, String>> respuestaCupo(ResultadoCupo resultado) {
+        return switch (resultado) {
+            case APLICADO -> ResponseEntity.ok(Map.of("resultado", resultado.name()));
+            case CUPO_INSUFICIENTE, TARJETA_INACTIVA -> ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", resultado.name()));
+            case TARJETA_NO_ENCONTRADA -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", resultado.name()));
+        };
+    }
+
+    // Normaliza el tamano de pagina solicitado a los limites configurados
+    private int tamanoPagina(Integer tamano) {
+        if (tamano == null || tamano <= 0) {
+            return tamanoPorDefecto;
+        }
+        return Math.min(tamano, tamanoMaximo);
+    }
+
 }
@@ -0,0 +1,12 @@
+package com.edu.cartmaster.dto;
+
+import java.math.BigDecimal;
+
+// Totales de las tarjetas de un cliente. El id se conserva como entero porque tambien es el cursor de la paginacion.
+public record AgregadoCliente(
+        Integer clienteId,
+        Long tarjetas,
+        BigDecimal cupoTotal,
+        BigDecimal cupoDisponible,
+        BigDecimal cupoUtilizado) {
+}
@@ -0,0 +1,12 @@
+package com.edu.cartmaster.dto;
+
+import java.math.BigDecimal;
+
+// Totales de un grupo de tarjetas (una franquicia o un estado), calculados con GROUP BY. Por cliente: AgregadoCliente.
+public record AgregadoTarjetas(
+        String grupo,
+        Long tarjetas,
+        BigDecimal cupoTotal,
+        BigDecimal cupoDisponible,
+        BigDecimal cupoUtilizado) {
+}
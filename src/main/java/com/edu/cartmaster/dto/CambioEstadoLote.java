@@ -0,0 +1,21 @@
+package com.edu.cartmaster.dto;
+
+import java.util.List;
+
+// Cuerpo de POST /api/tarjetas/estado/lote. Se indica una lista de ids o al menos un filtro, no ambos.
+// venceAntesDe usa el mismo formato que tarjetaFechaVencimiento (MM/AAAA) y es exclusivo.
+public record CambioEstadoLote(
+        String estado,
+        List<Integer> tarjetaIds,
+        String tarjetaFranquicia,
+        String venceAntesDe,
+        Integer clienteId) {
+
+    public boolean porIds() {
+        return tarjetaIds != null && !tarjetaIds.isEmpty();
+    }
+
+    public boolean conFiltros() {
+        return tarjetaFranquicia != null || venceAntesDe != null || clienteId != null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.edu.cartmaster.dto;
+
+import java.math.BigDecimal;
+
+// Cuerpo de PATCH /api/tarjetas/{id} (JSON Merge Patch). Un campo ausente o null no se modifica:
+// todas las columnas son NOT NULL, asi que un null nunca significa borrar el valor.
+// tarjetaVersion es opcional: si llega, el cambio solo se aplica si la tarjeta sigue en esa version.
+public record CambiosTarjeta(
+        String tarjetaNumero,
+        String tarjetaFechaVencimiento,
+        String tarjetaFranquicia,
+        String tarjetaEstado,
+        BigDecimal tarjetaCupoTotal,
+        BigDecimal tarjetaCupoDisponible,
+        Long tarjetaVersion) {
+
+    // Cambios sin version esperada (ultimo en escribir gana)
+    public CambiosTarjeta(String tarjetaNumero, String tarjetaFechaVencimiento, String tarjetaFranquicia,
+                          String tarjetaEstado, BigDecimal tarjetaCupoTotal, BigDecimal tarjetaCupoDisponible) {
+        this(tarjetaNumero, tarjetaFechaVencimiento, tarjetaFranquicia, tarjetaEstado, tarjetaCupoTotal,
+                tarjetaCupoDisponible, null);
+    }
+
+    // La version no es un cambio: solo condiciona los demas
+    public boolean vacio() {
+        return tarjetaNumero == null && tarjetaFechaVencimiento == null && tarjetaFranquicia == null
+                && tarjetaEstado == null && tarjetaCupoTotal == null && tarjetaCupoDisponible == null;
+    }
+}
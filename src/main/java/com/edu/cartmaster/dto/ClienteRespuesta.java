@@ -0,0 +1,11 @@
+package com.edu.cartmaster.dto;
+
+import com.edu.cartmaster.model.Cliente;
+
+// Respuesta de la API para un cliente: sin contrasena ni coleccion de tarjetas.
+public record ClienteRespuesta(Integer clienteId, String clienteNombre, String clienteCorreo) {
+
+    public static ClienteRespuesta de(Cliente cliente) {
+        return new ClienteRespuesta(cliente.getClienteId(), cliente.getClienteNombre(), cliente.getClienteCorreo());
+    }
+}
@@ -0,0 +1,11 @@
+package com.edu.cartmaster.dto;
+
+// Proyeccion de la consulta unificada de login sobre administrador y cliente
+public interface CredencialPrincipal {
+
+    String getTipo();
+
+    Integer getId();
+
+    String getContrasena();
+}
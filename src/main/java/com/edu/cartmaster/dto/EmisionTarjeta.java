@@ -0,0 +1,14 @@
+package com.edu.cartmaster.dto;
+
+import java.math.BigDecimal;
+
+// Fila de una emision masiva de tarjetas: datos de la tarjeta y el id del cliente al que se asigna
+public record EmisionTarjeta(
+        Integer clienteId,
+        String tarjetaNumero,
+        String tarjetaFechaVencimiento,
+        String tarjetaFranquicia,
+        String tarjetaEstado,
+        BigDecimal tarjetaCupoTotal,
+        BigDecimal tarjetaCupoDisponible) {
+}
@@ -0,0 +1,17 @@
+package com.edu.cartmaster.dto;
+
+import java.math.BigDecimal;
+
+// Filtros de GET /api/tarjetas/buscar; todos son opcionales y se combinan con AND.
+// venceDesde y venceHasta usan el formato MM/AAAA y son inclusivos.
+public record FiltroTarjetas(
+        String estado,
+        String franquicia,
+        String venceDesde,
+        String venceHasta,
+        BigDecimal cupoTotalMin,
+        BigDecimal cupoTotalMax,
+        BigDecimal cupoDisponibleMin,
+        BigDecimal cupoDisponibleMax,
+        String clienteCorreo) {
+}
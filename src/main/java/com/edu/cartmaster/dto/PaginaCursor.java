@@ -0,0 +1,8 @@
+package com.edu.cartmaster.dto;
+
+import java.util.List;
+
+// Pagina de resultados por cursor (keyset): "siguiente" es el id desde el cual pedir la proxima pagina,
+// o null cuando no hay mas resultados.
+public record PaginaCursor<T>(List<T> contenido, Integer siguiente) {
+}
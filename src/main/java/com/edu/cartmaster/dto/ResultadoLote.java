@@ -0,0 +1,20 @@
+package com.edu.cartmaster.dto;
+
+import java.util.List;
+
+// Reporte de una operacion por lotes: totales y el resultado de cada fila en el orden recibido
+public record ResultadoLote(int procesadas, int exitosas, int fallidas, List<ResultadoFila> filas) {
+
+    public static final String REGISTRADO = "REGISTRADO";
+    public static final String DUPLICADO = "DUPLICADO";
+    public static final String RECHAZADO = "RECHAZADO";
+
+    // "referencia" identifica la fila para quien importa el lote (correo del cliente, numero de tarjeta, etc.)
+    public record ResultadoFila(int fila, String referencia, String estado, String mensaje) {
+    }
+
+    public static ResultadoLote de(List<ResultadoFila> filas) {
+        int exitosas = (int) filas.stream().filter(fila -> REGISTRADO.equals(fila.estado())).count();
+        return new ResultadoLote(filas.size(), exitosas, filas.size() - exitosas, filas);
+    }
+}
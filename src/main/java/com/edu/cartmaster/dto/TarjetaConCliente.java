@@ -0,0 +1,27 @@
+package com.edu.cartmaster.dto;
+
+import java.math.BigDecimal;
+
+// Proyeccion de una tarjeta con los datos basicos de su cliente, armada en una sola consulta con JOIN.
+public record TarjetaConCliente(
+        Integer tarjetaId,
+        String numeroTarjeta,
+        String fechaVencimiento,
+        String franquicia,
+        String estado,
+        BigDecimal cupoTotal,
+        BigDecimal cupoDisponible,
+        BigDecimal cupoUtilizado,
+        ClienteResumen cliente) {
+
+    // Constructor usado por la expresion "select new" de TarjetaRepository
+    public TarjetaConCliente(Integer tarjetaId, String numeroTarjeta, String fechaVencimiento, String franquicia,
+                             String estado, BigDecimal cupoTotal, BigDecimal cupoDisponible, BigDecimal cupoUtilizado,
+                             Integer clienteId, String clienteNombre, String clienteCorreo) {
+        this(tarjetaId, numeroTarjeta, fechaVencimiento, franquicia, estado, cupoTotal, cupoDisponible, cupoUtilizado,
+                new ClienteResumen(clienteId, clienteNombre, clienteCorreo));
+    }
+
+    public record ClienteResumen(Integer id, String nombre, String correo) {
+    }
+}
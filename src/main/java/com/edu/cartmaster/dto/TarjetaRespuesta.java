@@ -0,0 +1,26 @@
+package com.edu.cartmaster.dto;
+
+import com.edu.cartmaster.model.Tarjeta;
+
+import java.math.BigDecimal;
+
+// Respuesta de la API para una tarjeta. Conserva los nombres de campo JSON de la entidad pero no incluye
+// el cliente, asi que serializarla nunca dispara cargas perezosas.
+public record TarjetaRespuesta(
+        Integer tarjetaId,
+        String tarjetaNumero,
+        String tarjetaFechaVencimiento,
+        String tarjetaFranquicia,
+        String tarjetaEstado,
+        BigDecimal tarjetaCupoTotal,
+        BigDecimal tarjetaCupoDisponible,
+        BigDecimal tarjetaCupoUtilizado,
+        Long tarjetaVersion) {
+
+    // Para respuestas de escrituras, donde la entidad ya esta cargada
+    public static TarjetaRespuesta de(Tarjeta tarjeta) {
+        return new TarjetaRespuesta(tarjeta.getTarjetaId(), tarjeta.getTarjetaNumero(), tarjeta.getTarjetaFechaVencimiento(),
+                tarjeta.getTarjetaFranquicia(), tarjeta.getTarjetaEstado(), tarjeta.getTarjetaCupoTotal(),
+                tarjeta.getTarjetaCupoDisponible(), tarjeta.getTarjetaCupoUtilizado(), tarjeta.getTarjetaVersion());
+    }
+}
@@ -6,6 +6,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+
 @Entity
 @Table(name = "tarjeta")
 @Data
@@ -29,16 +31,24 @@ public class Tarjeta {
     @Column(nullable = false)
     private String tarjetaEstado = "ACTIVO";
 
-    @Column(nullable = false)
-    private Double tarjetaCupoTotal;
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal tarjetaCupoTotal;
 
-    @Column(nullable = false)
-    private Double tarjetaCupoDisponible;
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal tarjetaCupoDisponible;
 
-    @Column(nullable = false, insertable = false, updatable = false)
-    private Double tarjetaCupoUtilizado;
+    @Column(nullable = false, insertable = false, updatable = false, precision = 15, scale = 2)
+    private BigDecimal tarjetaCupoUtilizado;
+
+    // Columna generada (AAAAMM) para filtrar por vencimiento con indice
+    @Column(insertable = false, updatable = false, length = 6)
+    private String tarjetaPeriodoVencimiento;
+
+    @Version
+    @Column(nullable = false)
+    private Long tarjetaVersion;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "cliente_id", nullable = false)
     @JsonBackReference
     private Cliente cliente;
@@ -2,6 +2,10 @@ package com.edu.cartmaster.repository;
 
 import com.edu.cartmaster.model.Administrador;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -9,4 +13,9 @@ import java.util.Optional;
 
     Optional<Administrador> findByCorreo(String correo);
 
+    @Transactional
+    @Modifying
+    @Query("update Administrador a set a.contrasena = :contrasena where a.id = :id")
+    int actualizarContrasena(@Param("id") Integer id, @Param("contrasena") String contrasena);
+
 }
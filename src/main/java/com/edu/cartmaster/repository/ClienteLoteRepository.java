@@ -0,0 +1,31 @@
+package com.edu.cartmaster.repository;
+
+import com.edu.cartmaster.model.Cliente;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+// Insercion masiva de clientes con batch JDBC. Cliente usa IDENTITY, lo que impide que Hibernate agrupe los INSERT.
+@Repository
+@RequiredArgsConstructor
+public class ClienteLoteRepository {
+
+    private static final String INSERTAR = """
+            INSERT INTO cliente (cliente_nombre, cliente_correo, cliente_contrasena) VALUES (?, ?, ?)
+            """;
+
+    // Solo si el batch falla: un correo registrado en paralelo por otra peticion se reporta como DUPLICADA
+    private static final String INSERTAR_FILA = INSERTAR + "ON DUPLICATE KEY UPDATE cliente_id = cliente_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public int[] insertarLote(List<Cliente> clientes) {
+        return InsercionLote.insertar(jdbcTemplate, INSERTAR, INSERTAR_FILA, clientes, (ps, cliente) -> {
+            ps.setString(1, cliente.getClienteNombre());
+            ps.setString(2, cliente.getClienteCorreo());
+            ps.setString(3, cliente.getClienteContrasena());
+        });
+    }
+}
@@ -1,11 +1,57 @@
 package com.edu.cartmaster.repository;
 
+import com.edu.cartmaster.config.CacheConfig;
+import com.edu.cartmaster.dto.ClienteRespuesta;
+import com.edu.cartmaster.dto.CredencialPrincipal;
 import com.edu.cartmaster.model.Cliente;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface ClienteRepository  extends JpaRepository<Cliente, Integer> {
     Optional<Cliente> findById(int id);
     Optional<Cliente> findByClienteCorreo(String correo);
+
+    // Lectura cacheada por id, proyectada a la respuesta de la API (sin contrasena ni tarjetas)
+    @Cacheable(cacheNames = CacheConfig.CLIENTES, unless = "#result == null")
+    @Query("select new com.edu.cartmaster.dto.ClienteRespuesta(c.clienteId, c.clienteNombre, c.clienteCorreo) from Cliente c where c.clienteId = :id")
+    Optional<ClienteRespuesta> buscarPorId(@Param("id") Integer id);
+
+    @Query("select c.clienteId from Cliente c where c.clienteId in :ids")
+    List<Integer> findIdsExistentes(@Param("ids") Collection<Integer> ids);
+
+    @Query("select c.clienteCorreo from Cliente c where c.clienteCorreo in :correos")
+    List<String> findCorreosExistentes(@Param("correos") Collection<String> correos);
+
+    // Resuelve un correo contra administradores y clientes en una sola consulta. Si el correo existe en ambas tablas
+    // retorna las dos filas, primero la del administrador, en el orden en que el login las verifica.
+    @Query(value = """
+            select u.tipo as tipo, u.id as id, u.contrasena as contrasena
+            from (
+                select 'ADMINISTRADOR' as tipo, a.administrador_id as id, a.administrador_contrasena as contrasena, 0 as prioridad
+                from administrador a where a.administrador_correo = :correo
+                union all
+                select 'CLIENTE', c.cliente_id, c.cliente_contrasena, 1
+                from cliente c where c.cliente_correo = :correo
+            ) u
+            order by u.prioridad
+            """, nativeQuery = true)
+    List<CredencialPrincipal> buscarCredencialesPorCorreo(@Param("correo") String correo);
+
+    @Transactional
+    @Modifying
+    @Query("update Cliente c set c.clienteContrasena = :contrasena where c.clienteId = :id")
+    int actualizarContrasena(@Param("id") Integer id, @Param("contrasena") String contrasena);
+
+    // Borrado en una sola sentencia, sin cargar el cliente ni su coleccion de tarjetas
+    @Modifying
+    @Query("delete from Cliente c where c.clienteId in :ids")
+    int eliminarPorIds(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,67 @@
+package com.edu.cartmaster.repository;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+// Insercion masiva con batch JDBC para los repositorios de lotes. El camino rapido es un INSERT simple en batch, que
+// con rewriteBatchedStatements=true el driver envia como INSERT multi-fila. Si alguna fila viola una restriccion
+// (clave unica, FK, NOT NULL) se vuelve al savepoint tomado antes del batch y el bloque se repite fila por fila con
+// INSERT ... ON DUPLICATE KEY UPDATE <id> = <id>: con useAffectedRows=true cada fila reporta 1 si se inserto y 0 si
+// la clave unica ya existia, y una fila rechazada por otra restriccion queda como FALLIDA sin afectar a las demas.
+// Debe ejecutarse dentro de una transaccion, que es la que hace el commit del bloque.
+public final class InsercionLote {
+
+    public static final int INSERTADA = 1;
+    public static final int DUPLICADA = 0;
+    public static final int FALLIDA = Statement.EXECUTE_FAILED;
+
+    private InsercionLote() {
+    }
+
+    // Retorna el resultado de cada fila (INSERTADA, DUPLICADA o FALLIDA) en el orden recibido
+    static <T> int[] insertar(JdbcTemplate jdbcTemplate, String sqlLote, String sqlPorFila, List<T> filas,
+                              ParameterizedPreparedStatementSetter<T> asignar) {
+        int[] resultado = new int[filas.size()];
+        if (insertarEnBatch(jdbcTemplate, sqlLote, filas, asignar)) {
+            Arrays.fill(resultado, INSERTADA);
+            return resultado;
+        }
+
+        for (int i = 0; i < resultado.length; i++) {
+            T fila = filas.get(i);
+            try {
+                int afectadas = jdbcTemplate.update(sqlPorFila, ps -> asignar.setValues(ps, fila));
+                resultado[i] = afectadas == 0 ? DUPLICADA : INSERTADA;
+            } catch (DataIntegrityViolationException e) {
+                resultado[i] = FALLIDA;
+            }
+        }
+        return resultado;
+    }
+
+    // true si todo el batch se inserto; false si alguna fila fue rechazada y el bloque se deshizo hasta el savepoint
+    private static <T> boolean insertarEnBatch(JdbcTemplate jdbcTemplate, String sql, List<T> filas,
+                                               ParameterizedPreparedStatementSetter<T> asignar) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) conexion -> {
+            if (conexion.getAutoCommit()) {
+                throw new IllegalStateException("La inserción por lote requiere una transacción");
+            }
+            Savepoint antesDelLote = conexion.setSavepoint();
+            try {
+                jdbcTemplate.batchUpdate(sql, filas, filas.size(), asignar);
+            } catch (DataIntegrityViolationException e) {
+                conexion.rollback(antesDelLote);
+                return false;
+            }
+            conexion.releaseSavepoint(antesDelLote);
+            return true;
+        }));
+    }
+}
@@ -0,0 +1,39 @@
+package com.edu.cartmaster.repository;
+
+import com.edu.cartmaster.dto.EmisionTarjeta;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// Insercion masiva de tarjetas con batch JDBC. Tarjeta usa IDENTITY, lo que impide que Hibernate agrupe los INSERT.
+@Repository
+@RequiredArgsConstructor
+public class TarjetaLoteRepository {
+
+    private static final String INSERTAR = """
+            INSERT INTO tarjeta (tarjeta_numero, tarjeta_fecha_vencimiento, tarjeta_franquicia, tarjeta_estado,
+                                 tarjeta_cupo_total, tarjeta_cupo_disponible, tarjeta_version, cliente_id)
+            VALUES (?, ?, ?, ?, ?, ?, 0, ?)
+            """;
+
+    // Solo si el batch falla: un numero emitido en paralelo se reporta como DUPLICADA; un cliente eliminado en
+    // paralelo (FK) como FALLIDA
+    private static final String INSERTAR_FILA = INSERTAR + "ON DUPLICATE KEY UPDATE tarjeta_id = tarjeta_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public int[] insertarLote(List<EmisionTarjeta> tarjetas) {
+        return InsercionLote.insertar(jdbcTemplate, INSERTAR, INSERTAR_FILA, tarjetas, (ps, tarjeta) -> {
+            ps.setString(1, tarjeta.tarjetaNumero());
+            ps.setString(2, tarjeta.tarjetaFechaVencimiento());
+            ps.setString(3, tarjeta.tarjetaFranquicia());
+            ps.setString(4, tarjeta.tarjetaEstado() != null ? tarjeta.tarjetaEstado() : "ACTIVO");
+            ps.setBigDecimal(5, tarjeta.tarjetaCupoTotal());
+            ps.setBigDecimal(6, tarjeta.tarjetaCupoDisponible());
+            ps.setInt(7, tarjeta.clienteId());
+        });
+    }
+}
@@ -1,15 +1,141 @@
 package com.edu.cartmaster.repository;
 
+import com.edu.cartmaster.dto.AgregadoCliente;
+import com.edu.cartmaster.dto.AgregadoTarjetas;
+import com.edu.cartmaster.dto.TarjetaConCliente;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Tarjeta;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
-
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface TarjetaRepository extends JpaRepository<Tarjeta, Integer>, TarjetaRepositoryCustom {
+    // Columnas de TarjetaRespuesta; las lecturas de la API no cargan entidades ni el cliente asociado
+    String SELECT_RESPUESTA = """
+            select new com.edu.cartmaster.dto.TarjetaRespuesta(
+                t.tarjetaId, t.tarjetaNumero, t.tarjetaFechaVencimiento, t.tarjetaFranquicia, t.tarjetaEstado,
+                t.tarjetaCupoTotal, t.tarjetaCupoDisponible, t.tarjetaCupoUtilizado, t.tarjetaVersion)
+            from Tarjeta t
+            """;
+
+    // Paginacion keyset: usa la llave primaria en lugar de OFFSET para que el costo sea constante.
+    @Query(SELECT_RESPUESTA + "where t.tarjetaId > :desde order by t.tarjetaId")
+    List<TarjetaRespuesta> findRespuestasDesde(@Param("desde") Integer desde, Limit limit);
+
+    @Query(SELECT_RESPUESTA + "where t.tarjetaId = :tarjetaId")
+    Optional<TarjetaRespuesta> findRespuestaPorId(@Param("tarjetaId") Integer tarjetaId);
+
+    @Query(SELECT_RESPUESTA + "where t.cliente.clienteId = :clienteId order by t.tarjetaId")
+    List<TarjetaRespuesta> findRespuestasPorClienteId(@Param("clienteId") Integer clienteId);
+
+    @Query("""
+            select new com.edu.cartmaster.dto.TarjetaConCliente(
+                t.tarjetaId, t.tarjetaNumero, t.tarjetaFechaVencimiento, t.tarjetaFranquicia, t.tarjetaEstado,
+                t.tarjetaCupoTotal, t.tarjetaCupoDisponible, t.tarjetaCupoUtilizado,
+                c.clienteId, c.clienteNombre, c.clienteCorreo)
+            from Tarjeta t join t.cliente c
+            order by t.tarjetaId
+            """)
+    List<TarjetaConCliente> findTarjetasConClientes();
+
+    // Misma proyeccion pero recorrida con un cursor del driver: debe consumirse dentro de una transaccion
+    // y cerrarse al terminar. Un fetch size de Integer.MIN_VALUE hace que MySQL envie las filas una a una.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select new com.edu.cartmaster.dto.TarjetaConCliente(
+                t.tarjetaId, t.tarjetaNumero, t.tarjetaFechaVencimiento, t.tarjetaFranquicia, t.tarjetaEstado,
+                t.tarjetaCupoTotal, t.tarjetaCupoDisponible, t.tarjetaCupoUtilizado,
+                c.clienteId, c.clienteNombre, c.clienteCorreo)
+            from Tarjeta t join t.cliente c
+            order by t.tarjetaId
+            """)
+    Stream<TarjetaConCliente> streamTarjetasConClientes();
+
+    // Agregados de la cartera: una sola consulta GROUP BY por dimension
+    @Query("""
+            select new com.edu.cartmaster.dto.AgregadoTarjetas(t.tarjetaFranquicia, count(t),
+                sum(t.tarjetaCupoTotal), sum(t.tarjetaCupoDisponible), sum(t.tarjetaCupoUtilizado))
+            from Tarjeta t
+            group by t.tarjetaFranquicia
+            order by t.tarjetaFranquicia
+            """)
+    List<AgregadoTarjetas> agregarPorFranquicia();
+
+    @Query("""
+            select new com.edu.cartmaster.dto.AgregadoTarjetas(t.tarjetaEstado, count(t),
+                sum(t.tarjetaCupoTotal), sum(t.tarjetaCupoDisponible), sum(t.tarjetaCupoUtilizado))
+            from Tarjeta t
+            group by t.tarjetaEstado
+            order by t.tarjetaEstado
+            """)
+    List<AgregadoTarjetas> agregarPorEstado();
+
+    // Agrupa por la llave foranea cliente_id, sin join con cliente. Hay un grupo por cliente, asi que se pagina
+    // por cursor sobre cliente_id (indice idx_tarjeta_cliente_estado) en lugar de devolver todos los grupos.
+    @Query("""
+            select new com.edu.cartmaster.dto.AgregadoCliente(t.cliente.clienteId, count(t),
+                sum(t.tarjetaCupoTotal), sum(t.tarjetaCupoDisponible), sum(t.tarjetaCupoUtilizado))
+            from Tarjeta t
+            where t.cliente.clienteId > :desde
+            group by t.cliente.clienteId
+            order by t.cliente.clienteId
+            """)
+    List<AgregadoCliente> agregarPorCliente(@Param("desde") Integer desde, Limit limite);
+
+    @Query("select t.tarjetaEstado from Tarjeta t where t.tarjetaId = :tarjetaId")
+    Optional<String> findEstadoPorId(@Param("tarjetaId") Integer tarjetaId);
+
+    @Query("select t.cliente.clienteId from Tarjeta t where t.tarjetaId = :tarjetaId")
+    Optional<Integer> findClienteIdByTarjetaId(@Param("tarjetaId") Integer tarjetaId);
+
+    @Query("select t.tarjetaNumero from Tarjeta t where t.tarjetaNumero in :numeros")
+    List<String> findNumerosExistentes(@Param("numeros") Collection<String> numeros);
+
+    // Borrado en una sola sentencia, sin cargar las tarjetas
+    @Modifying
+    @Query("delete from Tarjeta t where t.cliente.clienteId in :clienteIds")
+    int eliminarPorClienteIds(@Param("clienteIds") Collection<Integer> clienteIds);
+
+    // Cambio de estado de un bloque de tarjetas; las que ya tienen el estado destino no se reescriben
+    @Transactional
+    @Modifying
+    @Query("""
+            update Tarjeta t set t.tarjetaEstado = :estado, t.tarjetaVersion = t.tarjetaVersion + 1
+            where t.tarjetaId in :tarjetaIds and t.tarjetaEstado <> :estado
+            """)
+    int cambiarEstado(@Param("tarjetaIds") Collection<Integer> tarjetaIds, @Param("estado") String estado);
 
-public interface TarjetaRepository extends JpaRepository<Tarjeta, Integer> {
-    List<Tarjeta> findByCliente_ClienteId(Integer clienteId);
+    // Descuenta cupo en una sola sentencia condicional; retorna 0 si no hay cupo suficiente o la tarjeta no esta activa.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update Tarjeta t set t.tarjetaCupoDisponible = t.tarjetaCupoDisponible - :monto,
+                                 t.tarjetaVersion = t.tarjetaVersion + 1
+            where t.tarjetaId = :tarjetaId and t.tarjetaCupoDisponible >= :monto and t.tarjetaEstado = 'ACTIVO'
+            """)
+    int consumirCupo(@Param("tarjetaId") Integer tarjetaId, @Param("monto") BigDecimal monto);
 
-    List<Tarjeta> findByClienteClienteId(Integer clienteId);
-    void deleteByClienteClienteId(Integer clienteId);
+    // Devuelve cupo sin superar el cupo total de la tarjeta.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update Tarjeta t set t.tarjetaCupoDisponible = t.tarjetaCupoDisponible + :monto,
+                                 t.tarjetaVersion = t.tarjetaVersion + 1
+            where t.tarjetaId = :tarjetaId and t.tarjetaCupoDisponible + :monto <= t.tarjetaCupoTotal
+              and t.tarjetaEstado = 'ACTIVO'
+            """)
+    int reembolsarCupo(@Param("tarjetaId") Integer tarjetaId, @Param("monto") BigDecimal monto);
 }
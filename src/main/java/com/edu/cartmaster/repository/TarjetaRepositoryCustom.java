@@ -0,0 +1,21 @@
+package com.edu.cartmaster.repository;
+
+import com.edu.cartmaster.dto.CambioEstadoLote;
+import com.edu.cartmaster.dto.CambiosTarjeta;
+import com.edu.cartmaster.dto.FiltroTarjetas;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
+
+import java.util.List;
+
+public interface TarjetaRepositoryCustom {
+
+    // UPDATE de solo las columnas presentes en los cambios; retorna las filas afectadas (0 si la tarjeta no existe
+    // o, cuando los cambios traen tarjetaVersion, si la tarjeta ya no esta en esa version)
+    int actualizarCampos(Integer tarjetaId, CambiosTarjeta cambios);
+
+    // Siguiente bloque de ids (mayores que "desde") que cumplen los filtros y aun no tienen el estado destino
+    List<Integer> buscarIdsParaCambioEstado(CambioEstadoLote filtro, Integer desde, int limite);
+
+    // Busqueda con los filtros presentes, ordenada por id y con paginacion keyset a partir de "desde"
+    List<TarjetaRespuesta> buscar(FiltroTarjetas filtro, Integer desde, int limite);
+}
@@ -0,0 +1,145 @@
+package com.edu.cartmaster.repository;
+
+import com.edu.cartmaster.dto.CambioEstadoLote;
+import com.edu.cartmaster.dto.CambiosTarjeta;
+import com.edu.cartmaster.dto.FiltroTarjetas;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
+import com.edu.cartmaster.model.Cliente;
+import com.edu.cartmaster.model.Tarjeta;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fragmento de TarjetaRepository con las consultas que dependen de los campos recibidos
+public class TarjetaRepositoryImpl implements TarjetaRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Una sola sentencia sin leer la tarjeta antes. La version se incrementa igual que en una
+    // actualizacion de la entidad para que las escrituras con @Version detecten el cambio.
+    @Override
+    public int actualizarCampos(Integer tarjetaId, CambiosTarjeta cambios) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Tarjeta> update = cb.createCriteriaUpdate(Tarjeta.class);
+        Root<Tarjeta> tarjeta = update.from(Tarjeta.class);
+
+        asignar(update, tarjeta, "tarjetaNumero", cambios.tarjetaNumero());
+        asignar(update, tarjeta, "tarjetaFechaVencimiento", cambios.tarjetaFechaVencimiento());
+        asignar(update, tarjeta, "tarjetaFranquicia", cambios.tarjetaFranquicia());
+        asignar(update, tarjeta, "tarjetaEstado", cambios.tarjetaEstado());
+        asignar(update, tarjeta, "tarjetaCupoTotal", cambios.tarjetaCupoTotal());
+        asignar(update, tarjeta, "tarjetaCupoDisponible", cambios.tarjetaCupoDisponible());
+
+        Path<Long> version = tarjeta.get("tarjetaVersion");
+        update.set(version, cb.sum(version, 1L));
+        List<Predicate> condiciones = new ArrayList<>();
+        condiciones.add(cb.equal(tarjeta.get("tarjetaId"), tarjetaId));
+        if (cambios.tarjetaVersion() != null) {
+            condiciones.add(cb.equal(version, cambios.tarjetaVersion()));
+        }
+        // Con un solo cupo en los cambios el otro se compara con el valor guardado dentro del mismo UPDATE
+        if (cambios.tarjetaCupoTotal() == null && cambios.tarjetaCupoDisponible() != null) {
+            condiciones.add(cb.le(cb.literal(cambios.tarjetaCupoDisponible()),
+                    tarjeta.<BigDecimal>get("tarjetaCupoTotal")));
+        } else if (cambios.tarjetaCupoTotal() != null && cambios.tarjetaCupoDisponible() == null) {
+            condiciones.add(cb.ge(cb.literal(cambios.tarjetaCupoTotal()),
+                    tarjeta.<BigDecimal>get("tarjetaCupoDisponible")));
+        }
+        update.where(condiciones.toArray(Predicate[]::new));
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    public List<Integer> buscarIdsParaCambioEstado(CambioEstadoLote filtro, Integer desde, int limite) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
+        Root<Tarjeta> tarjeta = query.from(Tarjeta.class);
+
+        List<Predicate> condiciones = new ArrayList<>();
+        condiciones.add(cb.greaterThan(tarjeta.get("tarjetaId"), desde));
+        condiciones.add(cb.notEqual(tarjeta.get("tarjetaEstado"), filtro.estado()));
+        if (filtro.tarjetaFranquicia() != null) {
+            condiciones.add(cb.equal(tarjeta.get("tarjetaFranquicia"), filtro.tarjetaFranquicia()));
+        }
+        if (filtro.clienteId() != null) {
+            condiciones.add(cb.equal(tarjeta.get("cliente").get("clienteId"), filtro.clienteId()));
+        }
+        if (filtro.venceAntesDe() != null) {
+            condiciones.add(cb.lessThan(tarjeta.get("tarjetaPeriodoVencimiento"), periodo(filtro.venceAntesDe())));
+        }
+
+        query.select(tarjeta.get("tarjetaId"))
+                .where(condiciones.toArray(Predicate[]::new))
+                .orderBy(cb.asc(tarjeta.get("tarjetaId")));
+        return entityManager.createQuery(query).setMaxResults(limite).getResultList();
+    }
+
+    @Override
+    public List<TarjetaRespuesta> buscar(FiltroTarjetas filtro, Integer desde, int limite) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<TarjetaRespuesta> query = cb.createQuery(TarjetaRespuesta.class);
+        Root<Tarjeta> tarjeta = query.from(Tarjeta.class);
+
+        List<Predicate> condiciones = new ArrayList<>();
+        condiciones.add(cb.greaterThan(tarjeta.get("tarjetaId"), desde));
+        if (filtro.estado() != null) {
+            condiciones.add(cb.equal(tarjeta.get("tarjetaEstado"), filtro.estado()));
+        }
+        if (filtro.franquicia() != null) {
+            condiciones.add(cb.equal(tarjeta.get("tarjetaFranquicia"), filtro.franquicia()));
+        }
+        Path<String> periodo = tarjeta.get("tarjetaPeriodoVencimiento");
+        if (filtro.venceDesde() != null) {
+            condiciones.add(cb.greaterThanOrEqualTo(periodo, periodo(filtro.venceDesde())));
+        }
+        if (filtro.venceHasta() != null) {
+            condiciones.add(cb.lessThanOrEqualTo(periodo, periodo(filtro.venceHasta())));
+        }
+        rango(cb, condiciones, tarjeta.get("tarjetaCupoTotal"), filtro.cupoTotalMin(), filtro.cupoTotalMax());
+        rango(cb, condiciones, tarjeta.get("tarjetaCupoDisponible"), filtro.cupoDisponibleMin(), filtro.cupoDisponibleMax());
+        if (filtro.clienteCorreo() != null) {
+            // El join solo se agrega cuando se filtra por correo (indice unico de cliente_correo)
+            Join<Tarjeta, Cliente> cliente = tarjeta.join("cliente");
+            condiciones.add(cb.equal(cliente.get("clienteCorreo"), filtro.clienteCorreo()));
+        }
+
+        query.select(cb.construct(TarjetaRespuesta.class,
+                        tarjeta.get("tarjetaId"), tarjeta.get("tarjetaNumero"), tarjeta.get("tarjetaFechaVencimiento"),
+                        tarjeta.get("tarjetaFranquicia"), tarjeta.get("tarjetaEstado"), tarjeta.get("tarjetaCupoTotal"),
+                        tarjeta.get("tarjetaCupoDisponible"), tarjeta.get("tarjetaCupoUtilizado"), tarjeta.get("tarjetaVersion")))
+                .where(condiciones.toArray(Predicate[]::new))
+                .orderBy(cb.asc(tarjeta.get("tarjetaId")));
+        return entityManager.createQuery(query).setMaxResults(limite).getResultList();
+    }
+
+    private static void rango(CriteriaBuilder cb, List<Predicate> condiciones, Path<BigDecimal> campo, BigDecimal minimo, BigDecimal maximo) {
+        if (minimo != null) {
+            condiciones.add(cb.greaterThanOrEqualTo(campo, minimo));
+        }
+        if (maximo != null) {
+            condiciones.add(cb.lessThanOrEqualTo(campo, maximo));
+        }
+    }
+
+    // tarjetaFechaVencimiento se guarda como MM/AAAA; los filtros se comparan contra la columna generada AAAAMM
+    private static String periodo(String mesAnio) {
+        return mesAnio.substring(3) + mesAnio.substring(0, 2);
+    }
+
+    private static <T> void asignar(CriteriaUpdate<Tarjeta> update, Root<Tarjeta> tarjeta, String campo, T valor) {
+        if (valor != null) {
+            update.set(tarjeta.<T>get(campo), valor);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.edu.cartmaster.service;
+
+// Dimension por la que se agregan los cupos de la cartera de tarjetas
+public enum AgrupacionTarjetas {
+    FRANQUICIA,
+    ESTADO,
+    CLIENTE
+}
@@ -0,0 +1,87 @@
+package com.edu.cartmaster.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// Cache acotada por tamano y TTL de las credenciales consultadas en el login, indexada por correo. Cada correo guarda
+// sus credenciales en el orden en que se verifican (administrador y luego cliente); una lista vacia marca un correo
+// inexistente, para que los intentos fallidos repetidos no vayan a la base de datos.
+@Component
+public class CacheCredenciales {
+
+    public static final String ADMINISTRADOR = "ADMINISTRADOR";
+    public static final String CLIENTE = "CLIENTE";
+
+    // Registro de la cache: tipo de usuario, id y contrasena almacenada
+    public record Credencial(String tipo, Integer id, String contrasena) {
+    }
+
+    private final Cache<String, List<Credencial>> cache;
+
+    public CacheCredenciales(@Value("${cartmaster.login.cache.tamano-maximo:10000}") long tamanoMaximo,
+                             @Value("${cartmaster.login.cache.ttl:10m}") Duration ttl,
+                             @Value("${cartmaster.login.cache.ttl-inexistentes:1m}") Duration ttlInexistentes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(tamanoMaximo)
+                .expireAfter(new ExpiracionPorTipo(ttl, ttlInexistentes))
+                .build();
+    }
+
+    public List<Credencial> obtener(String correo, Function<String, List<Credencial>> cargador) {
+        return cache.get(correo, cargador);
+    }
+
+    // Reemplaza la credencial del mismo tipo y conserva las demas del correo
+    public void actualizar(String correo, Credencial credencial) {
+        cache.asMap().computeIfPresent(correo, (clave, credenciales) -> credenciales.stream()
+                .map(actual -> actual.tipo().equals(credencial.tipo()) ? credencial : actual)
+                .toList());
+    }
+
+    public void invalidar(String correo) {
+        if (correo != null) {
+            cache.invalidate(correo);
+        }
+    }
+
+    // Para eliminaciones donde solo se conoce el id del cliente; recorre la cache, que es acotada
+    public void invalidarCliente(Integer clienteId) {
+        invalidarClientes(Set.of(clienteId));
+    }
+
+    public void invalidarClientes(Collection<Integer> clienteIds) {
+        Set<Integer> ids = new HashSet<>(clienteIds);
+        cache.asMap().values().removeIf(credenciales -> credenciales.stream().anyMatch(credencial ->
+                CLIENTE.equals(credencial.tipo()) && ids.contains(credencial.id())));
+    }
+
+    // Los correos inexistentes expiran antes para no demorar el login de usuarios recien creados por otras vias
+    private record ExpiracionPorTipo(Duration ttl, Duration ttlInexistentes)
+            implements Expiry<String, List<Credencial>> {
+
+        @Override
+        public long expireAfterCreate(String correo, List<Credencial> credenciales, long ahora) {
+            return (credenciales.isEmpty() ? ttlInexistentes : ttl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String correo, List<Credencial> credenciales, long ahora, long restante) {
+            return expireAfterCreate(correo, credenciales, ahora);
+        }
+
+        @Override
+        public long expireAfterRead(String correo, List<Credencial> credenciales, long ahora, long restante) {
+            return restante;
+        }
+    }
+}
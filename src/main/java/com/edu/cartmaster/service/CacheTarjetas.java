@@ -0,0 +1,66 @@
+package com.edu.cartmaster.service;
+
+import com.edu.cartmaster.config.CacheConfig;
+import com.edu.cartmaster.repository.TarjetaRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+// Invalidacion de las caches de lectura de tarjetas y clientes tras cada escritura
+@Component
+@RequiredArgsConstructor
+public class CacheTarjetas {
+
+    private final CacheManager cacheManager;
+    private final TarjetaRepository tarjetaRepository;
+
+    // Desaloja la tarjeta y la lista de tarjetas de su cliente
+    public void invalidarTarjeta(Integer tarjetaId) {
+        cache(CacheConfig.TARJETAS).evict(tarjetaId);
+        Integer clienteId = clienteDeTarjeta(tarjetaId);
+        if (clienteId != null) {
+            invalidarTarjetasDeCliente(clienteId);
+        }
+    }
+
+    public void invalidarTarjetasDeCliente(Integer clienteId) {
+        cache(CacheConfig.TARJETAS_POR_CLIENTE).evict(clienteId);
+    }
+
+    // Eliminacion de clientes: las tarjetas borradas pueden estar en cache por id, asi que se limpia esa cache completa
+    public void invalidarClientes(Collection<Integer> clienteIds) {
+        Cache clientes = cache(CacheConfig.CLIENTES);
+        Cache tarjetasPorCliente = cache(CacheConfig.TARJETAS_POR_CLIENTE);
+        for (Integer clienteId : clienteIds) {
+            clientes.evict(clienteId);
+            tarjetasPorCliente.evict(clienteId);
+        }
+        cache(CacheConfig.TARJETAS).clear();
+        cache(CacheConfig.CLIENTE_POR_TARJETA).clear();
+    }
+
+    // Para actualizaciones masivas donde no se conoce cada tarjeta afectada
+    public void invalidarTodasLasTarjetas() {
+        cache(CacheConfig.TARJETAS).clear();
+        cache(CacheConfig.TARJETAS_POR_CLIENTE).clear();
+    }
+
+    private Integer clienteDeTarjeta(Integer tarjetaId) {
+        Cache clientePorTarjeta = cache(CacheConfig.CLIENTE_POR_TARJETA);
+        Integer clienteId = clientePorTarjeta.get(tarjetaId, Integer.class);
+        if (clienteId == null) {
+            clienteId = tarjetaRepository.findClienteIdByTarjetaId(tarjetaId).orElse(null);
+            if (clienteId != null) {
+                clientePorTarjeta.put(tarjetaId, clienteId);
+            }
+        }
+        return clienteId;
+    }
+
+    private Cache cache(String nombre) {
+        return cacheManager.getCache(nombre);
+    }
+}
@@ -1,76 +1,232 @@
 package com.edu.cartmaster.service;
 
-import com.edu.cartmaster.model.Administrador;
+import com.edu.cartmaster.dto.ClienteRespuesta;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.ResultadoLote.ResultadoFila;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Cliente;
-import com.edu.cartmaster.model.Tarjeta;
 import com.edu.cartmaster.repository.AdministradorRepostory;
+import com.edu.cartmaster.repository.ClienteLoteRepository;
 import com.edu.cartmaster.repository.ClienteRepository;
+import com.edu.cartmaster.repository.InsercionLote;
 import com.edu.cartmaster.repository.TarjetaRepository;
+import com.edu.cartmaster.service.CacheCredenciales.Credencial;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 
+// Cada metodo publico queda medido en cartmaster.servicio (etiquetas class y method)
+@Timed("cartmaster.servicio")
 @Service
 @RequiredArgsConstructor
 public class ClienteService {
 
     private final ClienteRepository clienteRepository;
+    private final ClienteLoteRepository clienteLoteRepository;
     private final TarjetaRepository tarjetaRepository;
     private final AdministradorRepostory administradorRepository;
-  
+    private final CacheCredenciales cacheCredenciales;
+    private final CacheTarjetas cacheTarjetas;
+    private final TarjetasClienteService tarjetasClienteService;
+    private final VerificadorContrasenas verificadorContrasenas;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final Pattern FORMATO_CORREO = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,6}$");
+    private static final Set<String> DOMINIOS_PERMITIDOS = Set.of("gmail.com", "correo.com");
+    // Codigo de error de MySQL para clave unica duplicada (ER_DUP_ENTRY)
+    private static final int CLAVE_DUPLICADA = 1062;
+
+    // Filas por consulta IN de duplicados y por batch JDBC en el registro masivo
+    @Value("${cartmaster.lote.tamano-bloque:1000}")
+    private int tamanoBloque;
+
     //Metodo para registrar un cliente
-    public Cliente registrarCliente(Cliente cliente) {
-        // Verifica si el correo ya existe
-        boolean yaExiste = clienteRepository.findByClienteCorreo(cliente.getClienteCorreo()).isPresent();
-        if (yaExiste) {
-            throw new RuntimeException("El correo ya está registrado");
+    public ClienteRespuesta registrarCliente(Cliente cliente) {
+        // Primero las validaciones en memoria; el duplicado lo detecta la restriccion unique de cliente_correo
+        String error = errorDeRegistro(cliente);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        cliente.setClienteContrasena(verificadorContrasenas.codificar(cliente.getClienteContrasena()));
+        Cliente guardado;
+        try {
+            guardado = clienteRepository.saveAndFlush(cliente);
+        } catch (DataIntegrityViolationException e) {
+            if (!esClaveDuplicada(e)) {
+                throw e;
+            }
+            throw new DuplicateKeyException("El correo ya está registrado", e);
+        }
+        // El correo pudo quedar en cache como inexistente por intentos de login previos
+        cacheCredenciales.invalidar(guardado.getClienteCorreo());
+        return ClienteRespuesta.de(guardado);
+    }
+
+    //Registro masivo: valida todo el lote en memoria, descarta duplicados con una consulta IN por bloque
+    //e inserta cada bloque con un solo batch JDBC. Retorna el resultado de cada fila.
+    public ResultadoLote registrarClientesEnLote(List<Cliente> clientes) {
+        ResultadoFila[] resultados = new ResultadoFila[clientes.size()];
+        List<Integer> validas = new ArrayList<>();
+        Set<String> correosDelLote = new HashSet<>();
+        for (int i = 0; i < clientes.size(); i++) {
+            Cliente cliente = clientes.get(i);
+            String correo = cliente.getClienteCorreo();
+            String error = errorDeRegistro(cliente);
+            if (error != null) {
+                resultados[i] = new ResultadoFila(i, correo, ResultadoLote.RECHAZADO, error);
+            } else if (!correosDelLote.add(correo)) {
+                resultados[i] = new ResultadoFila(i, correo, ResultadoLote.DUPLICADO, "El correo está repetido en el lote");
+            } else {
+                validas.add(i);
+            }
+        }
+
+        for (int inicio = 0; inicio < validas.size(); inicio += tamanoBloque) {
+            List<Integer> bloque = validas.subList(inicio, Math.min(inicio + tamanoBloque, validas.size()));
+            registrarBloque(clientes, bloque, resultados);
         }
-        // Validar formato de correo con expresión regular
-        if (!cliente.getClienteCorreo().matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,6}$")) {
-            throw new RuntimeException("El formato del correo es inválido");
+        return ResultadoLote.de(Arrays.asList(resultados));
+    }
+
+    private void registrarBloque(List<Cliente> clientes, List<Integer> bloque, ResultadoFila[] resultados) {
+        Set<String> existentes = new HashSet<>(clienteRepository.findCorreosExistentes(
+                bloque.stream().map(i -> clientes.get(i).getClienteCorreo()).toList()));
+
+        List<Integer> aInsertar = new ArrayList<>();
+        for (Integer i : bloque) {
+            String correo = clientes.get(i).getClienteCorreo();
+            if (existentes.contains(correo)) {
+                resultados[i] = new ResultadoFila(i, correo, ResultadoLote.DUPLICADO, "El correo ya está registrado");
+            } else {
+                aInsertar.add(i);
+            }
+        }
+        if (aInsertar.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = verificadorContrasenas.codificarTodos(
+                aInsertar.stream().map(i -> clientes.get(i).getClienteContrasena()).toList());
+        List<Cliente> nuevos = new ArrayList<>(aInsertar.size());
+        for (int j = 0; j < aInsertar.size(); j++) {
+            Cliente original = clientes.get(aInsertar.get(j));
+            Cliente nuevo = new Cliente();
+            nuevo.setClienteNombre(original.getClienteNombre());
+            nuevo.setClienteCorreo(original.getClienteCorreo());
+            nuevo.setClienteContrasena(hashes.get(j));
+            nuevos.add(nuevo);
         }
 
-        // Validar dominio permitido
-        if (!cliente.getClienteCorreo().endsWith("@gmail.com") && !cliente.getClienteCorreo().endsWith("@correo.com")) {
-            throw new RuntimeException("Solo se permiten correos con dominios @gmail.com o @correo.com");
+        // El hash se calcula fuera de la transaccion; cada bloque se inserta en una sola transaccion y no fila por fila
+        int[] filasInsertadas = transactionTemplate.execute(estado -> clienteLoteRepository.insertarLote(nuevos));
+        for (int j = 0; j < aInsertar.size(); j++) {
+            int i = aInsertar.get(j);
+            String correo = nuevos.get(j).getClienteCorreo();
+            // DUPLICADA: el correo se registro entre la consulta y la insercion
+            if (filasInsertadas[j] == InsercionLote.DUPLICADA) {
+                resultados[i] = new ResultadoFila(i, correo, ResultadoLote.DUPLICADO, "El correo ya está registrado");
+            } else if (filasInsertadas[j] == InsercionLote.FALLIDA) {
+                resultados[i] = new ResultadoFila(i, correo, ResultadoLote.RECHAZADO, "La base de datos rechazó la fila");
+            } else {
+                resultados[i] = new ResultadoFila(i, correo, ResultadoLote.REGISTRADO, null);
+                cacheCredenciales.invalidar(correo);
+            }
         }
+    }
+
+    // Solo la clave unica duplicada (ER_DUP_ENTRY) indica correo repetido: en cliente la unica clave unica
+    // ademas del id es cliente_correo. NOT NULL, longitudes y demas violaciones se propagan sin cambios.
+    private static boolean esClaveDuplicada(DataIntegrityViolationException e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SQLException sql && sql.getErrorCode() == CLAVE_DUPLICADA) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // Validar duplicado
-        if (clienteRepository.findByClienteCorreo(cliente.getClienteCorreo()).isPresent()) {
-            throw new RuntimeException("El correo ya está registrado");
+    // Validaciones en memoria del registro individual y del masivo; retorna el mensaje de error o null si es valido
+    private String errorDeRegistro(Cliente cliente) {
+        String error = errorDeCorreo(cliente.getClienteCorreo());
+        if (error == null && (cliente.getClienteNombre() == null || cliente.getClienteNombre().isBlank())) {
+            error = "El nombre es obligatorio";
         }
+        if (error == null && (cliente.getClienteContrasena() == null || cliente.getClienteContrasena().isEmpty())) {
+            error = "La contraseña es obligatoria";
+        }
+        return error;
+    }
 
-        return clienteRepository.save(cliente);
+    // Valida formato y dominio del correo; retorna el mensaje de error o null si es valido
+    private String errorDeCorreo(String correo) {
+        if (correo == null || !FORMATO_CORREO.matcher(correo).matches()) {
+            return "El formato del correo es inválido";
+        }
+        if (!DOMINIOS_PERMITIDOS.contains(correo.substring(correo.indexOf('@') + 1))) {
+            return "Solo se permiten correos con dominios @gmail.com o @correo.com";
+        }
+        return null;
     }
 
     //Metodo para logear un cliente
     public Map<String, Object> login(String correo, String contrasena) {
-        // Verificar si es administrador
-        Optional<Administrador> adminOpt = administradorRepository.findByCorreo(correo);
-        if (adminOpt.isPresent() && adminOpt.get().getContrasena().equals(contrasena)) {
-            Map<String, Object> response = new HashMap<>();
-            response.put("tipo", "ADMINISTRADOR");
-            return response;
+        if (correo == null || contrasena == null) {
+            return null;
         }
+        // Si el correo es de un administrador y de un cliente, primero se prueba el administrador y, si su
+        // contrasena no coincide, el cliente
+        for (Credencial credencial : cacheCredenciales.obtener(correo, this::buscarCredenciales)) {
+            if (!verificadorContrasenas.coincide(contrasena, credencial.contrasena())) {
+                continue;
+            }
+            if (!verificadorContrasenas.esHash(credencial.contrasena())) {
+                migrarContrasenaPlana(correo, credencial, contrasena);
+            }
 
-        // Verificar si es cliente
-        Optional<Cliente> clienteOpt = clienteRepository.findByClienteCorreo(correo);
-        if (clienteOpt.isPresent() && clienteOpt.get().getClienteContrasena().equals(contrasena)) {
-            Cliente cliente = clienteOpt.get();
             Map<String, Object> response = new HashMap<>();
-            response.put("tipo", "CLIENTE");
-            response.put("clienteId", cliente.getClienteId());
+            response.put("tipo", credencial.tipo());
+            if (CacheCredenciales.CLIENTE.equals(credencial.tipo())) {
+                response.put("clienteId", credencial.id());
+            }
             return response;
         }
-
         return null;
     }
 
+    // Los registros antiguos guardan la contrasena en texto plano; se reemplaza por su hash en el primer login exitoso
+    private void migrarContrasenaPlana(String correo, Credencial credencial, String contrasena) {
+        String hash = verificadorContrasenas.codificar(contrasena);
+        if (CacheCredenciales.ADMINISTRADOR.equals(credencial.tipo())) {
+            administradorRepository.actualizarContrasena(credencial.id(), hash);
+        } else {
+            clienteRepository.actualizarContrasena(credencial.id(), hash);
+        }
+        cacheCredenciales.actualizar(correo, new Credencial(credencial.tipo(), credencial.id(), hash));
+    }
+
+    // Una sola consulta sobre administradores y clientes; una lista vacia es un correo inexistente
+    private List<Credencial> buscarCredenciales(String correo) {
+        return clienteRepository.buscarCredencialesPorCorreo(correo).stream()
+                .map(principal -> new Credencial(principal.getTipo(), principal.getId(), principal.getContrasena()))
+                .toList();
+    }
+
     /*public String login(String correo, String contrasena) {
         // Buscar cliente
         Optional<Cliente> clienteOpt = clienteRepository.findByClienteCorreo(correo);
@@ -80,8 +236,8 @@ public class ClienteService {
         return "CREDENCIALES_INVALIDAS";
     }*/
 
-    public List<Tarjeta> obtenerTarjetasPorClienteId(Integer clienteId) {
-        return tarjetaRepository.findByCliente_ClienteId(clienteId);
+    public List<TarjetaRespuesta> obtenerTarjetasPorClienteId(Integer clienteId) {
+        return tarjetasClienteService.obtenerTarjetasPorClienteId(clienteId);
     }
 
     //Servicio que elimina un cliente en la bse de datos.
@@ -90,19 +246,34 @@ public class ClienteService {
             throw new RuntimeException("No se puede eliminar, cliente no encontrado con ID: " + id);
         }
         clienteRepository.deleteById(id);
+        cacheCredenciales.invalidarCliente(id);
+        cacheTarjetas.invalidarClientes(List.of(id));
     }
 
     @Transactional
     public void eliminarClienteYTarjetas(Integer clienteId) {
-        // Primero verificamos si el cliente existe
-        Cliente cliente = clienteRepository.findById(clienteId)
-                .orElseThrow(() -> new RuntimeException("Cliente no encontrado con ID: " + clienteId));
-
-        // Eliminamos primero las tarjetas asociadas al cliente
-        tarjetaRepository.deleteByClienteClienteId(clienteId);
+        // Dos sentencias DELETE, sin cargar el cliente ni sus tarjetas; si el cliente no existe se revierte todo
+        tarjetaRepository.eliminarPorClienteIds(List.of(clienteId));
+        if (clienteRepository.eliminarPorIds(List.of(clienteId)) == 0) {
+            throw new RuntimeException("Cliente no encontrado con ID: " + clienteId);
+        }
+        cacheCredenciales.invalidarCliente(clienteId);
+        cacheTarjetas.invalidarClientes(List.of(clienteId));
+    }
 
-        // Finalmente eliminamos el cliente
-        clienteRepository.delete(cliente);
+    //Eliminacion masiva de clientes y sus tarjetas en una transaccion; retorna cuantos clientes se eliminaron
+    @Transactional
+    public int eliminarClientesYTarjetas(List<Integer> clienteIds) {
+        List<Integer> ids = clienteIds.stream().distinct().toList();
+        int eliminados = 0;
+        for (int inicio = 0; inicio < ids.size(); inicio += tamanoBloque) {
+            List<Integer> bloque = ids.subList(inicio, Math.min(inicio + tamanoBloque, ids.size()));
+            tarjetaRepository.eliminarPorClienteIds(bloque);
+            eliminados += clienteRepository.eliminarPorIds(bloque);
+        }
+        cacheCredenciales.invalidarClientes(ids);
+        cacheTarjetas.invalidarClientes(ids);
+        return eliminados;
     }
 
 }
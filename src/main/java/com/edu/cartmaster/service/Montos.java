@@ -0,0 +1,23 @@
+package com.edu.cartmaster.service;
+
+import java.math.BigDecimal;
+
+// Reglas de los montos de dinero. Los cupos son DECIMAL(15,2) en la base de datos y BigDecimal en Java,
+// asi que las comparaciones y las restas del UPDATE condicional son exactas.
+public final class Montos {
+
+    public static final int ESCALA = 2;
+
+    private Montos() {
+    }
+
+    // Monto de una operacion (consumo o reembolso): positivo y con a lo sumo dos decimales
+    public static boolean esMontoValido(BigDecimal monto) {
+        return monto != null && monto.signum() > 0 && monto.stripTrailingZeros().scale() <= ESCALA;
+    }
+
+    // Valor de un cupo: no negativo y con a lo sumo dos decimales
+    public static boolean esCupoValido(BigDecimal cupo) {
+        return cupo != null && cupo.signum() >= 0 && cupo.stripTrailingZeros().scale() <= ESCALA;
+    }
+}
@@ -0,0 +1,9 @@
+package com.edu.cartmaster.service;
+
+// Resultado de consumir o reembolsar cupo sobre una tarjeta
+public enum ResultadoCupo {
+    APLICADO,
+    CUPO_INSUFICIENTE,
+    TARJETA_INACTIVA,
+    TARJETA_NO_ENCONTRADA
+}
@@ -1,17 +1,54 @@
 package com.edu.cartmaster.service;
 
-import com.edu.cartmaster.model.Cliente;
+import com.edu.cartmaster.config.CacheConfig;
+import com.edu.cartmaster.dto.AgregadoCliente;
+import com.edu.cartmaster.dto.AgregadoTarjetas;
+import com.edu.cartmaster.dto.CambioEstadoLote;
+import com.edu.cartmaster.dto.CambiosTarjeta;
+import com.edu.cartmaster.dto.EmisionTarjeta;
+import com.edu.cartmaster.dto.FiltroTarjetas;
+import com.edu.cartmaster.dto.PaginaCursor;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.ResultadoLote.ResultadoFila;
+import com.edu.cartmaster.dto.TarjetaConCliente;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Tarjeta;
 import com.edu.cartmaster.repository.ClienteRepository;
+import com.edu.cartmaster.repository.InsercionLote;
+import com.edu.cartmaster.repository.TarjetaLoteRepository;
 import com.edu.cartmaster.repository.TarjetaRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 
+// Cada metodo publico queda medido en cartmaster.servicio (etiquetas class y method)
+@Timed("cartmaster.servicio")
+@Slf4j
 @Service
 public class TarjetaService {
 
@@ -19,104 +56,394 @@ public class TarjetaService {
     private TarjetaRepository tarjetaRepository;
     @Autowired
     private ClienteRepository clienteRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private TarjetaLoteRepository tarjetaLoteRepository;
+    @Autowired
+    private CacheTarjetas cacheTarjetas;
+    @Autowired
+    private TarjetasClienteService tarjetasClienteService;
+    @Autowired
+    private MeterRegistry registry;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Filas por consulta IN de duplicados y por batch JDBC en la emision masiva
+    @Value("${cartmaster.lote.tamano-bloque:1000}")
+    private int tamanoBloque;
+
+    // Cada cuantas filas se vacia el buffer hacia el cliente durante la exportacion
+    private static final int FILAS_POR_FLUSH = 500;
+
+    private static final String CUPOS_INVALIDOS = "Los cupos son inválidos";
+    private static final Pattern FORMATO_VENCIMIENTO = Pattern.compile("^(0[1-9]|1[0-2])/\\d{4}$");
+
+    //Trae una pagina de tarjetas ordenadas por id a partir del cursor "desde" (exclusivo).
+    public PaginaCursor<TarjetaRespuesta> obtenerTarjetasPaginadas(Integer desde, int tamano) {
+        int cursor = desde == null ? 0 : desde;
+        return paginaCursor(tarjetaRepository.findRespuestasDesde(cursor, Limit.of(tamano + 1)), tamano,
+                TarjetaRespuesta::tarjetaId);
+    }
+
+    //Busqueda filtrada de tarjetas con la misma paginacion por cursor que el listado general.
+    public PaginaCursor<TarjetaRespuesta> buscarTarjetas(FiltroTarjetas filtro, Integer desde, int tamano) {
+        String error = errorDeVencimiento(filtro.venceDesde());
+        if (error == null) {
+            error = errorDeVencimiento(filtro.venceHasta());
+        }
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        int cursor = desde == null ? 0 : desde;
+        return paginaCursor(tarjetaRepository.buscar(filtro, cursor, tamano + 1), tamano, TarjetaRespuesta::tarjetaId);
+    }
+
+    // Recibe hasta tamano + 1 filas; la fila extra solo indica que existe una pagina siguiente
+    private static <T> PaginaCursor<T> paginaCursor(List<T> filas, int tamano, Function<T, Integer> cursor) {
+        if (filas.size() <= tamano) {
+            return new PaginaCursor<>(filas, null);
+        }
+        List<T> pagina = filas.subList(0, tamano);
+        return new PaginaCursor<>(pagina, cursor.apply(pagina.get(tamano - 1)));
+    }
 
-    public List<Tarjeta> obtenerTodasLasTarjetas() {
-        return tarjetaRepository.findAll();
+    public List<TarjetaRespuesta> obtenerTarjetasPorClienteId(Integer clienteId) {
+        return tarjetasClienteService.obtenerTarjetasPorClienteId(clienteId);
     }
 
-    public List<Tarjeta> obtenerTarjetasPorClienteId(Integer clienteId) {
-        return tarjetaRepository.findByClienteClienteId(clienteId);
+    @Cacheable(cacheNames = CacheConfig.TARJETAS, key = "#tarjetaId", unless = "#result == null")
+    public Optional<TarjetaRespuesta> obtenerTarjetaPorId(Integer tarjetaId) {
+        return tarjetaRepository.findRespuestaPorId(tarjetaId);
     }
 
-    public Optional<Tarjeta> obtenerTarjetaPorId(Integer tarjetaId) {
-        return tarjetaRepository.findById(tarjetaId);
+    public List<TarjetaConCliente> obtenerTarjetasConClientes() {
+        return tarjetaRepository.findTarjetasConClientes();
     }
 
-    public List<Tarjeta> obtenerTarjetasConClientes() {
-        return tarjetaRepository.findAll();
+    //Sumas y conteos de cupo por franquicia, estado o cliente, calculados en la base de datos.
+    //Solo expiran por TTL: el consumo de cupo es continuo y desalojarlos en cada escritura los dejaria casi
+    //siempre vacios. Los tableros toleran unos segundos de atraso; sync evita recalcularlos en paralelo.
+    //La agrupacion por cliente tiene un grupo por cliente: se consulta paginada y sin cache (obtenerAgregadosPorCliente).
+    @Cacheable(cacheNames = CacheConfig.AGREGADOS, key = "#agrupacion", sync = true)
+    public List<AgregadoTarjetas> obtenerAgregados(AgrupacionTarjetas agrupacion) {
+        return switch (agrupacion) {
+            case FRANQUICIA -> tarjetaRepository.agregarPorFranquicia();
+            case ESTADO -> tarjetaRepository.agregarPorEstado();
+            case CLIENTE -> throw new IllegalArgumentException("La agrupación por cliente se consulta paginada");
+        };
     }
 
-    public Tarjeta registrarTarjeta(Tarjeta tarjeta, Integer clienteId) {
-        Optional<Cliente> clienteOpt = clienteRepository.findById(clienteId);
-        if (clienteOpt.isEmpty()) {
+    //Totales por cliente con paginacion por cursor sobre el id del cliente
+    public PaginaCursor<AgregadoCliente> obtenerAgregadosPorCliente(Integer desde, int tamano) {
+        int cursor = desde == null ? 0 : desde;
+        return paginaCursor(tarjetaRepository.agregarPorCliente(cursor, Limit.of(tamano + 1)), tamano,
+                AgregadoCliente::clienteId);
+    }
+
+    //Escribe todas las tarjetas con su cliente como NDJSON (un objeto JSON por linea) sin cargarlas en memoria.
+    //Se usa una proyeccion a DTO, asi que el contexto de persistencia no acumula entidades mientras se recorre.
+    @Transactional(readOnly = true)
+    public void exportarTarjetasConClientes(OutputStream salida) throws IOException {
+        JsonGenerator generador = objectMapper.getFactory().createGenerator(salida);
+        generador.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        try (generador; Stream<TarjetaConCliente> filas = tarjetaRepository.streamTarjetasConClientes()) {
+            int escritas = 0;
+            for (TarjetaConCliente fila : (Iterable<TarjetaConCliente>) filas::iterator) {
+                generador.writeObject(fila);
+                generador.writeRaw('\n');
+                if (++escritas % FILAS_POR_FLUSH == 0) {
+                    generador.flush();
+                }
+            }
+        }
+    }
+
+    public TarjetaRespuesta registrarTarjeta(Tarjeta tarjeta, Integer clienteId) {
+        if (clienteRepository.buscarPorId(clienteId).isEmpty()) {
             throw new RuntimeException("Cliente no encontrado con ID: " + clienteId);
         }
-        tarjeta.setCliente(clienteOpt.get());
-        return tarjetaRepository.save(tarjeta);
+        // Las mismas reglas que la emision masiva: cupos en rango y disponible no mayor al total
+        String error = errorDeEmision(new EmisionTarjeta(clienteId, tarjeta.getTarjetaNumero(), tarjeta.getTarjetaFechaVencimiento(),
+                tarjeta.getTarjetaFranquicia(), tarjeta.getTarjetaEstado(), tarjeta.getTarjetaCupoTotal(),
+                tarjeta.getTarjetaCupoDisponible()), Set.of(clienteId));
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        // Basta una referencia para la llave foranea; el cliente no se carga
+        tarjeta.setCliente(clienteRepository.getReferenceById(clienteId));
+        Tarjeta guardada = tarjetaRepository.save(tarjeta);
+        cacheTarjetas.invalidarTarjetasDeCliente(clienteId);
+        return TarjetaRespuesta.de(guardada);
     }
 
-    public Optional<Tarjeta> actualizarTarjeta(Integer tarjetaId, Tarjeta tarjetaActualizada) {
-        return tarjetaRepository.findById(tarjetaId)
-                .map(tarjetaExistente -> {
-                    if (tarjetaActualizada.getTarjetaEstado() != null) {
-                        tarjetaExistente.setTarjetaEstado(tarjetaActualizada.getTarjetaEstado());
-                    }
-                    if (tarjetaActualizada.getTarjetaCupoTotal() != null) {
-                        tarjetaExistente.setTarjetaCupoTotal(tarjetaActualizada.getTarjetaCupoTotal());
-                    }
-                    if (tarjetaActualizada.getTarjetaCupoDisponible() != null) {
-                        tarjetaExistente.setTarjetaCupoDisponible(tarjetaActualizada.getTarjetaCupoDisponible());
-                    }
-                    return tarjetaRepository.save(tarjetaExistente);
-                });
+    //Emision masiva: valida en memoria, resuelve todos los clientes con una sola consulta, descarta numeros
+    //ya emitidos con una consulta IN por bloque e inserta cada bloque con un batch JDBC.
+    public ResultadoLote emitirTarjetasEnLote(List<EmisionTarjeta> emisiones) {
+        ResultadoFila[] resultados = new ResultadoFila[emisiones.size()];
+        List<Integer> clienteIds = emisiones.stream().map(EmisionTarjeta::clienteId).filter(id -> id != null).distinct().toList();
+        Set<Integer> clientesExistentes = clienteIds.isEmpty() ? Set.of() : new HashSet<>(clienteRepository.findIdsExistentes(clienteIds));
+
+        List<Integer> validas = new ArrayList<>();
+        Set<String> numerosDelLote = new HashSet<>();
+        for (int i = 0; i < emisiones.size(); i++) {
+            EmisionTarjeta emision = emisiones.get(i);
+            String error = errorDeEmision(emision, clientesExistentes);
+            if (error != null) {
+                resultados[i] = new ResultadoFila(i, emision.tarjetaNumero(), ResultadoLote.RECHAZADO, error);
+            } else if (!numerosDelLote.add(emision.tarjetaNumero())) {
+                resultados[i] = new ResultadoFila(i, emision.tarjetaNumero(), ResultadoLote.DUPLICADO, "El número está repetido en el lote");
+            } else {
+                validas.add(i);
+            }
+        }
+
+        for (int inicio = 0; inicio < validas.size(); inicio += tamanoBloque) {
+            List<Integer> bloque = validas.subList(inicio, Math.min(inicio + tamanoBloque, validas.size()));
+            // Un bloque por transaccion: la insercion no hace commit fila por fila
+            transactionTemplate.executeWithoutResult(estado -> emitirBloque(emisiones, bloque, resultados));
+        }
+        validas.stream()
+                .filter(i -> ResultadoLote.REGISTRADO.equals(resultados[i].estado()))
+                .map(i -> emisiones.get(i).clienteId())
+                .distinct()
+                .forEach(cacheTarjetas::invalidarTarjetasDeCliente);
+        return ResultadoLote.de(Arrays.asList(resultados));
     }
 
-    public Optional<Tarjeta> actualizarTarjetaConCupos(Integer tarjetaId, Tarjeta tarjetaActualizada) {
-        return tarjetaRepository.findById(tarjetaId)
-                .map(tarjetaExistente -> {
-                    if (tarjetaActualizada.getTarjetaEstado() != null) {
-                        tarjetaExistente.setTarjetaEstado(tarjetaActualizada.getTarjetaEstado());
-                    }
-                    if (tarjetaActualizada.getTarjetaFechaVencimiento() != null) {
-                        tarjetaExistente.setTarjetaFechaVencimiento(tarjetaActualizada.getTarjetaFechaVencimiento());
-                    }
-                    if (tarjetaActualizada.getTarjetaFranquicia() != null) {
-                        tarjetaExistente.setTarjetaFranquicia(tarjetaActualizada.getTarjetaFranquicia());
-                    }
-                    if (tarjetaActualizada.getTarjetaCupoTotal() != null) {
-                        tarjetaExistente.setTarjetaCupoTotal(tarjetaActualizada.getTarjetaCupoTotal());
-                    }
-                    if (tarjetaActualizada.getTarjetaCupoDisponible() != null) {
-                        tarjetaExistente.setTarjetaCupoDisponible(tarjetaActualizada.getTarjetaCupoDisponible());
-                    }
-                    return tarjetaRepository.save(tarjetaExistente);
-                });
+    private void emitirBloque(List<EmisionTarjeta> emisiones, List<Integer> bloque, ResultadoFila[] resultados) {
+        Set<String> existentes = new HashSet<>(tarjetaRepository.findNumerosExistentes(
+                bloque.stream().map(i -> emisiones.get(i).tarjetaNumero()).toList()));
+
+        List<Integer> aInsertar = new ArrayList<>();
+        for (Integer i : bloque) {
+            String numero = emisiones.get(i).tarjetaNumero();
+            if (existentes.contains(numero)) {
+                resultados[i] = new ResultadoFila(i, numero, ResultadoLote.DUPLICADO, "La tarjeta ya está registrada");
+            } else {
+                aInsertar.add(i);
+            }
+        }
+        if (aInsertar.isEmpty()) {
+            return;
+        }
+
+        int[] filasInsertadas = tarjetaLoteRepository.insertarLote(aInsertar.stream().map(emisiones::get).toList());
+        for (int j = 0; j < aInsertar.size(); j++) {
+            int i = aInsertar.get(j);
+            String numero = emisiones.get(i).tarjetaNumero();
+            // DUPLICADA: el numero se emitio entre la consulta y la insercion; FALLIDA: otra restriccion,
+            // por ejemplo el cliente se elimino en ese intervalo
+            if (filasInsertadas[j] == InsercionLote.DUPLICADA) {
+                resultados[i] = new ResultadoFila(i, numero, ResultadoLote.DUPLICADO, "La tarjeta ya está registrada");
+            } else if (filasInsertadas[j] == InsercionLote.FALLIDA) {
+                resultados[i] = new ResultadoFila(i, numero, ResultadoLote.RECHAZADO, "La base de datos rechazó la fila");
+            } else {
+                resultados[i] = new ResultadoFila(i, numero, ResultadoLote.REGISTRADO, null);
+            }
+        }
     }
 
-    public Optional<Tarjeta> actualizarDatosGeneralesTarjeta(Integer tarjetaId, Tarjeta tarjetaActualizada) {
-        return tarjetaRepository.findById(tarjetaId)
-                .map(tarjetaExistente -> {
-                    if (tarjetaActualizada.getTarjetaNumero() != null) {
-                        tarjetaExistente.setTarjetaNumero(tarjetaActualizada.getTarjetaNumero());
-                    }
-                    if (tarjetaActualizada.getTarjetaFechaVencimiento() != null) {
-                        tarjetaExistente.setTarjetaFechaVencimiento(tarjetaActualizada.getTarjetaFechaVencimiento());
-                    }
-                    if (tarjetaActualizada.getTarjetaFranquicia() != null) {
-                        tarjetaExistente.setTarjetaFranquicia(tarjetaActualizada.getTarjetaFranquicia());
-                    }
-                    if (tarjetaActualizada.getTarjetaEstado() != null) {
-                        tarjetaExistente.setTarjetaEstado(tarjetaActualizada.getTarjetaEstado());
+    // Retorna el mensaje de error de la fila o null si es valida
+    private String errorDeEmision(EmisionTarjeta emision, Set<Integer> clientesExistentes) {
+        if (emision.clienteId() == null || !clientesExistentes.contains(emision.clienteId())) {
+            return "Cliente no encontrado con ID: " + emision.clienteId();
+        }
+        if (emision.tarjetaNumero() == null || emision.tarjetaNumero().isEmpty() || emision.tarjetaNumero().length() > 16) {
+            return "El número de tarjeta es inválido";
+        }
+        if (emision.tarjetaFechaVencimiento() == null || emision.tarjetaFechaVencimiento().length() > 7) {
+            return "La fecha de vencimiento es inválida";
+        }
+        if (emision.tarjetaFranquicia() == null) {
+            return "La franquicia es obligatoria";
+        }
+        if (!Montos.esCupoValido(emision.tarjetaCupoTotal()) || !Montos.esCupoValido(emision.tarjetaCupoDisponible())
+                || emision.tarjetaCupoDisponible().compareTo(emision.tarjetaCupoTotal()) > 0) {
+            return CUPOS_INVALIDOS;
+        }
+        return null;
+    }
+
+    //Actualizacion parcial: un solo UPDATE con las columnas presentes, sin leer la tarjeta antes.
+    //Solo se consulta la tarjeta despues, para responder con sus valores vigentes. Si los cambios traen
+    //tarjetaVersion y otra peticion modifico la tarjeta entretanto, lanza OptimisticLockingFailureException.
+    @Transactional
+    public Optional<TarjetaRespuesta> actualizarParcialmente(Integer tarjetaId, CambiosTarjeta cambios) {
+        if (cambios.vacio()) {
+            Optional<TarjetaRespuesta> actual = tarjetaRepository.findRespuestaPorId(tarjetaId);
+            if (cambios.tarjetaVersion() != null && actual.isPresent()
+                    && !cambios.tarjetaVersion().equals(actual.get().tarjetaVersion())) {
+                throw versionDesactualizada(tarjetaId);
+            }
+            return actual;
+        }
+        String error = errorDeCambios(cambios);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        if (tarjetaRepository.actualizarCampos(tarjetaId, cambios) == 0) {
+            // Sin filas: la tarjeta no existe, con version esperada cambio desde que el cliente la leyo,
+            // o el cupo recibido no cabe con el otro cupo guardado
+            Optional<TarjetaRespuesta> actual = tarjetaRepository.findRespuestaPorId(tarjetaId);
+            if (actual.isEmpty()) {
+                return actual;
+            }
+            if (cambios.tarjetaVersion() != null && !cambios.tarjetaVersion().equals(actual.get().tarjetaVersion())) {
+                throw versionDesactualizada(tarjetaId);
+            }
+            throw new IllegalArgumentException(CUPOS_INVALIDOS);
+        }
+        cacheTarjetas.invalidarTarjeta(tarjetaId);
+        return tarjetaRepository.findRespuestaPorId(tarjetaId);
+    }
+
+    // Variantes PUT sobre actualizarParcialmente; como la llamada es interna cada una declara su transaccion
+    @Transactional
+    public Optional<TarjetaRespuesta> actualizarTarjeta(Integer tarjetaId, Tarjeta tarjetaActualizada) {
+        return actualizarParcialmente(tarjetaId, new CambiosTarjeta(null, null, null,
+                tarjetaActualizada.getTarjetaEstado(), tarjetaActualizada.getTarjetaCupoTotal(),
+                tarjetaActualizada.getTarjetaCupoDisponible(), tarjetaActualizada.getTarjetaVersion()));
+    }
+
+    @Transactional
+    public Optional<TarjetaRespuesta> actualizarTarjetaConCupos(Integer tarjetaId, Tarjeta tarjetaActualizada) {
+        return actualizarParcialmente(tarjetaId, new CambiosTarjeta(null,
+                tarjetaActualizada.getTarjetaFechaVencimiento(), tarjetaActualizada.getTarjetaFranquicia(),
+                tarjetaActualizada.getTarjetaEstado(), tarjetaActualizada.getTarjetaCupoTotal(),
+                tarjetaActualizada.getTarjetaCupoDisponible(), tarjetaActualizada.getTarjetaVersion()));
+    }
+
+    @Transactional
+    public Optional<TarjetaRespuesta> actualizarDatosGeneralesTarjeta(Integer tarjetaId, Tarjeta tarjetaActualizada) {
+        return actualizarParcialmente(tarjetaId, new CambiosTarjeta(tarjetaActualizada.getTarjetaNumero(),
+                tarjetaActualizada.getTarjetaFechaVencimiento(), tarjetaActualizada.getTarjetaFranquicia(),
+                tarjetaActualizada.getTarjetaEstado(), null, null, tarjetaActualizada.getTarjetaVersion()));
+    }
+
+    @Transactional
+    public Optional<TarjetaRespuesta> inactivarTarjeta(Integer tarjetaId) {
+        return actualizarParcialmente(tarjetaId, new CambiosTarjeta(null, null, null, "INACTIVO", null, null));
+    }
+
+    @Transactional
+    public Optional<TarjetaRespuesta> actualizarCupoDisponible(Integer tarjetaId, BigDecimal nuevoCupoDisponible,
+                                                               Long versionEsperada) {
+        return actualizarParcialmente(tarjetaId,
+                new CambiosTarjeta(null, null, null, null, null, nuevoCupoDisponible, versionEsperada));
+    }
+
+    //Cambio de estado masivo por lista de ids o por filtros; retorna cuantas tarjetas cambiaron.
+    //Cada bloque es un UPDATE en su propia transaccion: los bloqueos duran poco y el avance ya
+    //confirmado se conserva si el proceso se interrumpe. Volver a ejecutarlo solo procesa lo pendiente.
+    public int cambiarEstadoEnLote(CambioEstadoLote solicitud) {
+        String error = errorDeCambioEstado(solicitud);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        int afectadas = 0;
+        int bloques = 0;
+        try {
+            if (solicitud.porIds()) {
+                List<Integer> ids = solicitud.tarjetaIds().stream().distinct().toList();
+                for (int inicio = 0; inicio < ids.size(); inicio += tamanoBloque) {
+                    List<Integer> bloque = ids.subList(inicio, Math.min(inicio + tamanoBloque, ids.size()));
+                    afectadas += tarjetaRepository.cambiarEstado(bloque, solicitud.estado());
+                    bloques++;
+                    log.info("Cambio de estado a {}: bloque {} ({} de {} ids revisados, {} tarjetas cambiadas)",
+                            solicitud.estado(), bloques, inicio + bloque.size(), ids.size(), afectadas);
+                }
+            } else {
+                // Recorrido keyset por id: cada bloque se busca con los filtros y se actualiza por ids
+                int cursor = 0;
+                List<Integer> bloque;
+                do {
+                    bloque = tarjetaRepository.buscarIdsParaCambioEstado(solicitud, cursor, tamanoBloque);
+                    if (bloque.isEmpty()) {
+                        break;
                     }
-                    return tarjetaRepository.save(tarjetaExistente);
-                });
+                    afectadas += tarjetaRepository.cambiarEstado(bloque, solicitud.estado());
+                    cursor = bloque.get(bloque.size() - 1);
+                    bloques++;
+                    log.info("Cambio de estado a {}: bloque {} (hasta el id {}, {} tarjetas cambiadas)",
+                            solicitud.estado(), bloques, cursor, afectadas);
+                } while (bloque.size() == tamanoBloque);
+            }
+        } finally {
+            // No se sabe que tarjetas quedaron en cache, asi que se limpian las caches de tarjetas completas
+            if (afectadas > 0) {
+                cacheTarjetas.invalidarTodasLasTarjetas();
+            }
+        }
+        log.info("Cambio de estado a {} terminado: {} tarjetas en {} bloques", solicitud.estado(), afectadas, bloques);
+        return afectadas;
+    }
+
+    // Retorna el mensaje de error de la solicitud o null si es valida
+    private String errorDeCambioEstado(CambioEstadoLote solicitud) {
+        if (solicitud.estado() == null || solicitud.estado().isBlank()) {
+            return "El estado es obligatorio";
+        }
+        if (solicitud.porIds() == solicitud.conFiltros()) {
+            return "Debe indicar una lista de tarjetas o al menos un filtro, no ambos";
+        }
+        return errorDeVencimiento(solicitud.venceAntesDe());
+    }
+
+    // Los cupos recibidos deben ser validos y, si llegan ambos, el disponible no puede superar al total;
+    // con uno solo la comparacion contra el valor guardado la hace el UPDATE
+    private String errorDeCambios(CambiosTarjeta cambios) {
+        BigDecimal total = cambios.tarjetaCupoTotal();
+        BigDecimal disponible = cambios.tarjetaCupoDisponible();
+        if ((total != null && !Montos.esCupoValido(total))
+                || (disponible != null && !Montos.esCupoValido(disponible))
+                || (total != null && disponible != null && disponible.compareTo(total) > 0)) {
+            return CUPOS_INVALIDOS;
+        }
+        return errorDeVencimiento(cambios.tarjetaFechaVencimiento());
     }
 
+    // Los filtros de vencimiento son opcionales; si vienen deben tener el formato MM/AAAA
+    private String errorDeVencimiento(String mesAnio) {
+        if (mesAnio != null && !FORMATO_VENCIMIENTO.matcher(mesAnio).matches()) {
+            return "La fecha de vencimiento debe tener el formato MM/AAAA";
+        }
+        return null;
+    }
+
+    //Consume cupo de forma atomica en la base de datos, sin leer la tarjeta antes.
+    @Transactional
+    public ResultadoCupo consumirCupo(Integer tarjetaId, BigDecimal monto) {
+        return resultadoCupo(tarjetaId, tarjetaRepository.consumirCupo(tarjetaId, monto));
+    }
+
+    //Reembolsa cupo de forma atomica; nunca deja el disponible por encima del cupo total.
     @Transactional
-    public Optional<Tarjeta> inactivarTarjeta(Integer tarjetaId) {
-        return tarjetaRepository.findById(tarjetaId)
-                .map(tarjeta -> {
-                    tarjeta.setTarjetaEstado("INACTIVO");
-                    return tarjetaRepository.save(tarjeta);
-                });
-    }
-
-    public Optional<Tarjeta> actualizarCupoDisponible(Integer tarjetaId, double nuevoCupoDisponible) {
-        return tarjetaRepository.findById(tarjetaId)
-                .map(tarjeta -> {
-                    tarjeta.setTarjetaCupoDisponible(nuevoCupoDisponible);
-                    return tarjetaRepository.save(tarjeta);
-                });
+    public ResultadoCupo reembolsarCupo(Integer tarjetaId, BigDecimal monto) {
+        return resultadoCupo(tarjetaId, tarjetaRepository.reembolsarCupo(tarjetaId, monto));
+    }
+
+    // Las ediciones son UPDATE condicionados por la version y el cliente decide si reintenta; en lugar de contar
+    // reintentos se cuentan los conflictos que terminan en 409 VERSION_DESACTUALIZADA
+    private OptimisticLockingFailureException versionDesactualizada(Integer tarjetaId) {
+        Counter.builder("cartmaster.tarjetas.conflictos.version")
+                .description("Actualizaciones de tarjetas rechazadas por version desactualizada")
+                .register(registry)
+                .increment();
+        return new OptimisticLockingFailureException(
+                "La tarjeta " + tarjetaId + " fue modificada por otra petición; vuelva a consultarla");
+    }
+
+    // Solo cuando el UPDATE no afecta filas se consulta el estado de la tarjeta, para diferenciar el error
+    private ResultadoCupo resultadoCupo(Integer tarjetaId, int filasActualizadas) {
+        if (filasActualizadas > 0) {
+            cacheTarjetas.invalidarTarjeta(tarjetaId);
+            return ResultadoCupo.APLICADO;
+        }
+        return tarjetaRepository.findEstadoPorId(tarjetaId)
+                .map(estado -> "ACTIVO".equals(estado) ? ResultadoCupo.CUPO_INSUFICIENTE : ResultadoCupo.TARJETA_INACTIVA)
+                .orElse(ResultadoCupo.TARJETA_NO_ENCONTRADA);
     }
 
 }
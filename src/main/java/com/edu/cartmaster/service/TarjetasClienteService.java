@@ -0,0 +1,25 @@
+package com.edu.cartmaster.service;
+
+import com.edu.cartmaster.config.CacheConfig;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
+import com.edu.cartmaster.repository.TarjetaRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Lista de tarjetas de un cliente, cacheada y compartida por ClienteService y TarjetaService.
+// Se invalida desde CacheTarjetas en cada escritura sobre las tarjetas del cliente.
+@Service
+@RequiredArgsConstructor
+public class TarjetasClienteService {
+
+    private final TarjetaRepository tarjetaRepository;
+
+    // sync = true: ante un fallo de cache solo un hilo consulta la base de datos y los demas esperan ese resultado
+    @Cacheable(cacheNames = CacheConfig.TARJETAS_POR_CLIENTE, key = "#clienteId", sync = true)
+    public List<TarjetaRespuesta> obtenerTarjetasPorClienteId(Integer clienteId) {
+        return List.copyOf(tarjetaRepository.findRespuestasPorClienteId(clienteId));
+    }
+}
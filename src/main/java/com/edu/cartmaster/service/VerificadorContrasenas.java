@@ -0,0 +1,152 @@
+package com.edu.cartmaster.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// Hashing BCrypt de contrasenas en un pool de hilos propio y acotado, para que el costo de CPU del hash
+// no ocupe los hilos de Tomcat. Cuando la cola se llena se rechaza la tarea (RejectedExecutionException)
+// en lugar de acumular logins en espera. Las importaciones masivas usan un segundo pool, con menos hilos, para que
+// un lote grande no ocupe los hilos del login ni todos los procesadores.
+@Component
+public class VerificadorContrasenas {
+
+    private static final Pattern HASH_BCRYPT = Pattern.compile("^\\$2[aby]?\\$\\d\\d\\$[./A-Za-z0-9]{53}$");
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor executorLote;
+    private final long timeoutMs;
+    private final Counter rechazos;
+
+    public VerificadorContrasenas(MeterRegistry registry,
+                                  @Value("${cartmaster.seguridad.bcrypt-costo:10}") int costo,
+                                  @Value("${cartmaster.seguridad.hash.hilos:0}") int hilos,
+                                  @Value("${cartmaster.seguridad.hash.capacidad-cola:256}") int capacidadCola,
+                                  @Value("${cartmaster.seguridad.hash.timeout-ms:2000}") long timeoutMs,
+                                  @Value("${cartmaster.seguridad.hash.hilos-lote:0}") int hilosLote) {
+        int procesadores = Runtime.getRuntime().availableProcessors();
+        this.encoder = new BCryptPasswordEncoder(costo);
+        this.executor = pool("hash-contrasenas-", hilos > 0 ? hilos : procesadores,
+                new ArrayBlockingQueue<>(capacidadCola));
+        // Cola sin limite: codificarTodos envia como maximo una ventana del tamano del pool por lote en curso
+        this.executorLote = pool("hash-lote-", hilosLote > 0 ? hilosLote : Math.max(1, procesadores / 2),
+                new LinkedBlockingQueue<>());
+        this.timeoutMs = timeoutMs;
+        this.rechazos = Counter.builder("cartmaster.contrasenas.hash.rechazos")
+                .description("Operaciones de hash rechazadas por cola llena o tiempo de espera agotado")
+                .register(registry);
+        Gauge.builder("cartmaster.contrasenas.hash.cola", executor, e -> e.getQueue().size())
+                .description("Operaciones de hash en espera")
+                .register(registry);
+        Gauge.builder("cartmaster.contrasenas.hash.activos", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Operaciones de hash en ejecucion")
+                .register(registry);
+        Gauge.builder("cartmaster.contrasenas.hash.lote.activos", executorLote, ThreadPoolExecutor::getActiveCount)
+                .description("Operaciones de hash de importaciones masivas en ejecucion")
+                .register(registry);
+    }
+
+    private static ThreadPoolExecutor pool(String prefijo, int hilos, BlockingQueue<Runnable> cola) {
+        AtomicInteger contador = new AtomicInteger();
+        return new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS, cola,
+                tarea -> {
+                    Thread hilo = new Thread(tarea, prefijo + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Compara contra un hash BCrypt o, para registros antiguos, contra la contrasena en texto plano
+    public boolean coincide(String contrasena, String almacenada) {
+        if (!esHash(almacenada)) {
+            return MessageDigest.isEqual(contrasena.getBytes(StandardCharsets.UTF_8),
+                    almacenada.getBytes(StandardCharsets.UTF_8));
+        }
+        return ejecutar(() -> encoder.matches(contrasena, almacenada));
+    }
+
+    public String codificar(String contrasena) {
+        return ejecutar(() -> encoder.encode(contrasena));
+    }
+
+    // Para importaciones masivas: reparte los hash entre los hilos del pool de lotes en ventanas del tamano del pool.
+    // El ritmo lo fija BCrypt: con costo 10 cada hilo produce del orden de 10 a 20 hash por segundo. Los valores que
+    // ya son hash BCrypt se conservan sin costo, por lo que una importacion con hashes previos solo depende del INSERT.
+    public List<String> codificarTodos(List<String> contrasenas) {
+        List<String> resultado = new ArrayList<>(contrasenas.size());
+        int ventana = executorLote.getMaximumPoolSize();
+        for (int inicio = 0; inicio < contrasenas.size(); inicio += ventana) {
+            List<Future<String>> futuros = new ArrayList<>();
+            for (String contrasena : contrasenas.subList(inicio, Math.min(inicio + ventana, contrasenas.size()))) {
+                futuros.add(esHash(contrasena) ? CompletableFuture.completedFuture(contrasena)
+                        : executorLote.submit(() -> encoder.encode(contrasena)));
+            }
+            for (Future<String> futuro : futuros) {
+                resultado.add(esperar(futuro));
+            }
+        }
+        return resultado;
+    }
+
+    public boolean esHash(String almacenada) {
+        return almacenada != null && HASH_BCRYPT.matcher(almacenada).matches();
+    }
+
+    private <T> T ejecutar(Callable<T> tarea) {
+        return esperar(enviar(tarea));
+    }
+
+    private <T> Future<T> enviar(Callable<T> tarea) {
+        try {
+            return executor.submit(tarea);
+        } catch (RejectedExecutionException e) {
+            rechazos.increment();
+            throw e;
+        }
+    }
+
+    private <T> T esperar(Future<T> futuro) {
+        try {
+            return futuro.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            futuro.cancel(true);
+            rechazos.increment();
+            throw new RejectedExecutionException("Tiempo de espera agotado al procesar la contrasena", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Hash de contrasena interrumpido", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error al procesar la contrasena", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdown();
+        executorLote.shutdown();
+    }
+}
@@ -0,0 +1,2 @@
+-- Columna de version para el bloqueo optimista de Tarjeta (@Version)
+ALTER TABLE tarjeta ADD COLUMN tarjeta_version BIGINT NOT NULL DEFAULT 0;
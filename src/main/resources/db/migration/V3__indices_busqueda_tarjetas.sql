@@ -0,0 +1,11 @@
+-- Periodo de vencimiento AAAAMM derivado de tarjeta_fecha_vencimiento (MM/AAAA), para filtrar rangos con indice
+ALTER TABLE tarjeta
+    ADD COLUMN tarjeta_periodo_vencimiento CHAR(6)
+        AS (CONCAT(SUBSTRING(tarjeta_fecha_vencimiento, 4, 4), SUBSTRING(tarjeta_fecha_vencimiento, 1, 2))) STORED;
+
+-- Indices de la busqueda de tarjetas. InnoDB agrega la llave primaria a cada indice secundario,
+-- asi que la paginacion keyset (tarjeta_id > ? ORDER BY tarjeta_id) se resuelve sobre el mismo indice.
+CREATE INDEX idx_tarjeta_estado_franquicia ON tarjeta (tarjeta_estado, tarjeta_franquicia);
+CREATE INDEX idx_tarjeta_cliente_estado ON tarjeta (cliente_id, tarjeta_estado);
+CREATE INDEX idx_tarjeta_franquicia_periodo ON tarjeta (tarjeta_franquicia, tarjeta_periodo_vencimiento);
+CREATE INDEX idx_tarjeta_periodo_vencimiento ON tarjeta (tarjeta_periodo_vencimiento);
@@ -0,0 +1,12 @@
+-- Cupos como DECIMAL(15,2) en lugar de DOUBLE: montos exactos en comparaciones, restas y totales.
+-- tarjeta_cupo_utilizado es derivado (total - disponible); se elimina y se vuelve a crear sobre las columnas
+-- DECIMAL porque MySQL no permite cambiar el tipo de una columna referenciada por una columna generada.
+ALTER TABLE tarjeta DROP COLUMN tarjeta_cupo_utilizado;
+
+ALTER TABLE tarjeta
+    MODIFY tarjeta_cupo_total DECIMAL(15, 2) NOT NULL,
+    MODIFY tarjeta_cupo_disponible DECIMAL(15, 2) NOT NULL;
+
+ALTER TABLE tarjeta
+    ADD COLUMN tarjeta_cupo_utilizado DECIMAL(15, 2)
+        AS (tarjeta_cupo_total - tarjeta_cupo_disponible) STORED NOT NULL;
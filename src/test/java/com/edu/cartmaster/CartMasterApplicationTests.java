@@ -3,7 +3,8 @@ package com.edu.cartmaster;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Sin MySQL en las pruebas: las migraciones no pueden ejecutarse al iniciar el contexto
+@SpringBootTest(properties = "spring.flyway.enabled=false")
 class CartMasterApplicationTests {
 
 	@Test
@@ -0,0 +1,17 @@
+package com.edu.cartmaster.config;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+
+// Ayuda para las pruebas: verifica el numero exacto de sentencias SQL que ejecuto una peticion (cabecera X-Sql-Count).
+// Requiere cartmaster.sql.contador.habilitado=true y cartmaster.sql.contador.cabeceras=true.
+public final class ConsultasSql {
+
+    private ConsultasSql() {
+    }
+
+    public static ResultMatcher sentenciasSql(int esperadas) {
+        return header().string(FiltroPresupuestoSql.CABECERA_CONTEO, String.valueOf(esperadas));
+    }
+}
@@ -0,0 +1,103 @@
+package com.edu.cartmaster.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FiltroPresupuestoSqlTest {
+
+    private static final String RUTA = "GET /api/tarjetas/{tarjetaId}=1";
+
+    @Test
+    void doFilter_ConCabeceras_DebeReportarLasSentenciasHastaElCuerpo() throws Exception {
+        FiltroPresupuestoSql filtro = new FiltroPresupuestoSql(true, "log", 0, RUTA);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filtro.doFilter(peticion(), response, (req, res) -> {
+            ContadorSql.registrar(1, 3);
+            res.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+            // Con la respuesta ya enviada, una carga perezosa posterior ya no entra en las cabeceras
+            ContadorSql.registrar(1, 2);
+        });
+
+        assertEquals("1", response.getHeader(FiltroPresupuestoSql.CABECERA_CONTEO));
+        assertEquals("3", response.getHeader(FiltroPresupuestoSql.CABECERA_TIEMPO));
+    }
+
+    @Test
+    void doFilter_ModoLog_SentenciasDeMas_NoDebeInterrumpirLaPeticion() throws Exception {
+        FiltroPresupuestoSql filtro = new FiltroPresupuestoSql(false, "log", 0, RUTA);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filtro.doFilter(peticion(), response, (req, res) -> ContadorSql.registrar(2, 0));
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(FiltroPresupuestoSql.CABECERA_CONTEO));
+    }
+
+    @Test
+    void doFilter_ModoFallar_SentenciasDeMas_DebeLanzarError() {
+        FiltroPresupuestoSql filtro = new FiltroPresupuestoSql(true, "fallar", 0, RUTA);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Una consulta por la tarjeta y otra perezosa por su cliente: el caso N+1
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> filtro.doFilter(peticion(), response, (req, res) -> ContadorSql.registrar(2, 0)));
+
+        assertTrue(error.getMessage().contains("GET /api/tarjetas/{tarjetaId}"));
+    }
+
+    @Test
+    void doFilter_ModoFallar_ExcesoAntesDelCuerpo_DebeFallarSinEnviarLaRespuesta() throws Exception {
+        FiltroPresupuestoSql filtro = new FiltroPresupuestoSql(false, "fallar", 0, RUTA);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThrows(IllegalStateException.class, () -> filtro.doFilter(peticion(), response, (req, res) -> {
+            ContadorSql.registrar(2, 0);
+            res.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+        }));
+
+        // El error se lanza al pedir el stream: el cuerpo no se escribio y la respuesta puede cambiar a 500
+        assertFalse(response.isCommitted());
+        assertEquals(0, response.getContentLength());
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    void doFilter_ModoFallar_ExcesoConRespuestaYaEnviada_SoloDebeRegistrarse() throws Exception {
+        FiltroPresupuestoSql filtro = new FiltroPresupuestoSql(false, "fallar", 0, RUTA);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filtro.doFilter(peticion(), response, (req, res) -> {
+            ContadorSql.registrar(1, 0);
+            res.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+            // Carga perezosa despues de enviar la respuesta: ya no se puede responder con error
+            ContadorSql.registrar(1, 0);
+        });
+
+        assertTrue(response.isCommitted());
+        assertEquals(200, response.getStatus());
+        assertEquals("{}", response.getContentAsString());
+    }
+
+    @Test
+    void presupuestos_DebeLeerMetodoPatronYMaximo() {
+        assertEquals(Map.of("GET /api/tarjetas/{tarjetaId}", 1, "POST /clientes/login", 2),
+                FiltroPresupuestoSql.presupuestos("GET /api/tarjetas/{tarjetaId}=1, POST /clientes/login=2"));
+        assertThrows(IllegalArgumentException.class, () -> FiltroPresupuestoSql.presupuestos("GET /api/tarjetas"));
+    }
+
+    private static MockHttpServletRequest peticion() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tarjetas/1");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/tarjetas/{tarjetaId}");
+        return request;
+    }
+}
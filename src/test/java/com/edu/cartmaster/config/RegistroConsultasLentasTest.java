@@ -0,0 +1,123 @@
+package com.edu.cartmaster.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RegistroConsultasLentasTest {
+
+    private SimpleMeterRegistry registry;
+    private ObjectProvider<MeterRegistry> proveedor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        proveedor = mock(ObjectProvider.class);
+        when(proveedor.getObject()).thenReturn(registry);
+    }
+
+    @Test
+    void redactar_NumeroDeTarjeta_DebeDejarSoloLosUltimosCuatroDigitos() {
+        assertEquals("****1111", RegistroConsultasLentas.redactar("4111111111111111"));
+    }
+
+    @Test
+    void redactar_NumeroDeTarjetaConEspaciosOGuiones_DebeEnmascararse() {
+        assertEquals("****4444", RegistroConsultasLentas.redactar("5555 5555 5555 4444"));
+        assertEquals("****0004", RegistroConsultasLentas.redactar("3782-822463-10004"));
+    }
+
+    @Test
+    void redactar_HashBCrypt_DebeOcultarseCompleto() {
+        String hash = "$2a$10$" + "N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy";
+
+        assertEquals("****", RegistroConsultasLentas.redactar(hash));
+    }
+
+    @Test
+    void redactar_TextoLargo_DebeTruncarseA64Caracteres() {
+        String largo = "x".repeat(100);
+
+        assertEquals("x".repeat(64) + "...", RegistroConsultasLentas.redactar(largo));
+        assertEquals("test@gmail.com", RegistroConsultasLentas.redactar("test@gmail.com"));
+    }
+
+    @Test
+    void redactar_ValorNoTexto_DebeRetornarseSinCambios() {
+        BigDecimal cupo = new BigDecimal("1000.00");
+
+        assertSame(cupo, RegistroConsultasLentas.redactar(cupo));
+        assertEquals(4111111111111111L, RegistroConsultasLentas.redactar(4111111111111111L));
+    }
+
+    @Test
+    void parametros_DebeRedactarEnOrdenYDejarNulosLosSetNull() throws Exception {
+        List<ParameterSetOperation> operaciones = List.of(
+                operacion("setString", new Class<?>[]{int.class, String.class}, 1, "4111111111111111"),
+                operacion("setNull", new Class<?>[]{int.class, int.class}, 2, Types.VARCHAR),
+                operacion("setBigDecimal", new Class<?>[]{int.class, BigDecimal.class}, 3, new BigDecimal("50.00")));
+
+        assertEquals(Arrays.asList("****1111", null, new BigDecimal("50.00")),
+                RegistroConsultasLentas.parametros(operaciones));
+    }
+
+    @Test
+    void afterQuery_BajoElUmbral_NoDebeContarNiRegistrar() {
+        RegistroConsultasLentas registro = new RegistroConsultasLentas(200, 1.0, proveedor);
+        QueryInfo consulta = spy(new QueryInfo("SELECT 1"));
+
+        registro.afterQuery(ejecucion(199), List.of(consulta));
+
+        assertNull(registry.find("cartmaster.sql.lentas").counter());
+        verifyNoInteractions(consulta);
+    }
+
+    @Test
+    void afterQuery_SobreElUmbralSinMuestreo_DebeContarSinRegistrar() {
+        RegistroConsultasLentas registro = new RegistroConsultasLentas(200, 0.0, proveedor);
+        QueryInfo consulta = spy(new QueryInfo("SELECT 1"));
+
+        registro.afterQuery(ejecucion(200), List.of(consulta));
+        registro.afterQuery(ejecucion(350), List.of(consulta));
+
+        assertEquals(2.0, registry.get("cartmaster.sql.lentas").counter().count());
+        verifyNoInteractions(consulta);
+    }
+
+    @Test
+    void afterQuery_SobreElUmbralConMuestreoCompleto_DebeContarYRegistrar() {
+        RegistroConsultasLentas registro = new RegistroConsultasLentas(200, 1.0, proveedor);
+        QueryInfo consulta = spy(new QueryInfo("SELECT * FROM tarjeta WHERE tarjeta_numero = ?"));
+
+        registro.afterQuery(ejecucion(500), List.of(consulta));
+
+        assertEquals(1.0, registry.get("cartmaster.sql.lentas").counter().count());
+        verify(consulta).getQuery();
+        verify(consulta).getParametersList();
+    }
+
+    private static ExecutionInfo ejecucion(long duracionMs) {
+        ExecutionInfo ejecucion = new ExecutionInfo();
+        ejecucion.setElapsedTime(duracionMs);
+        return ejecucion;
+    }
+
+    private static ParameterSetOperation operacion(String metodo, Class<?>[] tipos, Object... args) throws Exception {
+        return new ParameterSetOperation(PreparedStatement.class.getMethod(metodo, tipos), args);
+    }
+}
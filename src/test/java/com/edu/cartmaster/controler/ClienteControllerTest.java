@@ -1,20 +1,30 @@
 package com.edu.cartmaster.controler;
 
+import com.edu.cartmaster.dto.ClienteRespuesta;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.ResultadoLote.ResultadoFila;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Cliente;
 import com.edu.cartmaster.model.Tarjeta;
 import com.edu.cartmaster.service.ClienteService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -49,7 +59,7 @@ class ClienteControllerTest {
 
     @Test
     void registrarCliente_ConDatosValidos_DebeRetornarCreated() throws Exception {
-        when(clienteService.registrarCliente(any(Cliente.class))).thenReturn(cliente);
+        when(clienteService.registrarCliente(any(Cliente.class))).thenReturn(ClienteRespuesta.de(cliente));
 
         mockMvc.perform(post("/clientes/registro")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -57,13 +67,14 @@ class ClienteControllerTest {
                 .andExpect(status().isCreated())
                 .andExpect(jsonPath("$.clienteId").value(cliente.getClienteId()))
                 .andExpect(jsonPath("$.clienteNombre").value(cliente.getClienteNombre()))
-                .andExpect(jsonPath("$.clienteCorreo").value(cliente.getClienteCorreo()));
+                .andExpect(jsonPath("$.clienteCorreo").value(cliente.getClienteCorreo()))
+                .andExpect(jsonPath("$.clienteContrasena").doesNotExist());
     }
 
     @Test
     void registrarCliente_ConCorreoExistente_DebeRetornarConflict() throws Exception {
         when(clienteService.registrarCliente(any(Cliente.class)))
-                .thenThrow(new RuntimeException("El correo ya está registrado"));
+                .thenThrow(new DuplicateKeyException("El correo ya está registrado"));
 
         mockMvc.perform(post("/clientes/registro")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -72,6 +83,44 @@ class ClienteControllerTest {
                 .andExpect(content().string("El correo ya está registrado"));
     }
 
+    @Test
+    void registrarCliente_SinContrasena_DebeRetornarBadRequest() throws Exception {
+        when(clienteService.registrarCliente(any(Cliente.class)))
+                .thenThrow(new IllegalArgumentException("La contraseña es obligatoria"));
+
+        mockMvc.perform(post("/clientes/registro")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(cliente)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("La contraseña es obligatoria"));
+    }
+
+    @Test
+    void registrarCliente_ConOtraViolacionDeIntegridad_NoDebeResponderConflict() {
+        when(clienteService.registrarCliente(any(Cliente.class)))
+                .thenThrow(new DataIntegrityViolationException("Data too long for column 'cliente_nombre'"));
+
+        assertThrows(ServletException.class, () -> mockMvc.perform(post("/clientes/registro")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(cliente))));
+    }
+
+    @Test
+    void registrarClientesEnLote_DebeRetornarReportePorFila() throws Exception {
+        ResultadoLote resultado = ResultadoLote.de(List.of(
+                new ResultadoFila(0, "test@gmail.com", ResultadoLote.REGISTRADO, null),
+                new ResultadoFila(1, "otro@gmail.com", ResultadoLote.DUPLICADO, "El correo ya está registrado")));
+        when(clienteService.registrarClientesEnLote(anyList())).thenReturn(resultado);
+
+        mockMvc.perform(post("/clientes/registro/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(cliente, cliente))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.procesadas").value(2))
+                .andExpect(jsonPath("$.exitosas").value(1))
+                .andExpect(jsonPath("$.filas[1].estado").value("DUPLICADO"));
+    }
+
     @Test
     void login_ConCredencialesValidas_DebeRetornarOk() throws Exception {
         Map<String, Object> response = new HashMap<>();
@@ -101,11 +150,24 @@ class ClienteControllerTest {
                 .andExpect(jsonPath("$.error").value("CREDENCIALES_INVALIDAS"));
     }
 
+    @Test
+    void login_ConPoolDeHashSaturado_DebeRetornarServiceUnavailable() throws Exception {
+        when(clienteService.login(credenciales.get("correo"), credenciales.get("contrasena")))
+                .thenThrow(new RejectedExecutionException());
+
+        mockMvc.perform(post("/clientes/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(credenciales)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.error").value("SERVICIO_SATURADO"));
+    }
+
     @Test
     void obtenerTarjetas_ClienteExistente_DebeRetornarTarjetas() throws Exception {
-        List<Tarjeta> tarjetas = Arrays.asList(
-                new Tarjeta(),
-                new Tarjeta()
+        List<TarjetaRespuesta> tarjetas = Arrays.asList(
+                TarjetaRespuesta.de(new Tarjeta()),
+                TarjetaRespuesta.de(new Tarjeta())
         );
 
         when(clienteService.obtenerTarjetasPorClienteId(1)).thenReturn(tarjetas);
@@ -133,4 +195,15 @@ class ClienteControllerTest {
         mockMvc.perform(delete("/clientes/999"))
                 .andExpect(status().isNotFound());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void eliminarClientes_DebeRetornarCantidadEliminada() throws Exception {
+        when(clienteService.eliminarClientesYTarjetas(List.of(1, 2, 3))).thenReturn(2);
+
+        mockMvc.perform(post("/clientes/eliminacion/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(1, 2, 3))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.eliminados").value(2));
+    }
+}
@@ -0,0 +1,159 @@
+package com.edu.cartmaster.controler;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static com.edu.cartmaster.config.ConsultasSql.sentenciasSql;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Sentencias SQL exactas por endpoint con los servicios y repositorios reales sobre H2 en modo MySQL.
+// Cada prueba usa ids o correos propios para empezar con las caches frias. El presupuesto en modo fallar
+// convierte ademas cualquier exceso sobre cartmaster.sql.presupuesto.rutas en un error de la peticion.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:consultas;MODE=MySQL;DATABASE_TO_LOWER=TRUE;IGNORE_UNKNOWN_SETTINGS=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "spring.flyway.enabled=false",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:esquema-h2.sql",
+        "cartmaster.sql.contador.habilitado=true",
+        "cartmaster.sql.contador.cabeceras=true",
+        "cartmaster.sql.presupuesto.modo=fallar"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ConsultasPorEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void cargarDatos() {
+        String hash = new BCryptPasswordEncoder(4).encode("clave123");
+        for (int cliente = 1; cliente <= 4; cliente++) {
+            jdbcTemplate.update("INSERT INTO cliente (cliente_nombre, cliente_correo, cliente_contrasena) VALUES (?, ?, ?)",
+                    "Cliente " + cliente, "cliente" + cliente + "@gmail.com", hash);
+            for (int tarjeta = 1; tarjeta <= 3; tarjeta++) {
+                jdbcTemplate.update("""
+                                INSERT INTO tarjeta (tarjeta_numero, tarjeta_fecha_vencimiento, tarjeta_franquicia,
+                                                     tarjeta_estado, tarjeta_cupo_total, tarjeta_cupo_disponible, cliente_id)
+                                VALUES (?, '12/2030', ?, 'ACTIVO', 1000.00, 400.00, ?)
+                                """,
+                        "41111111111" + cliente + "000" + tarjeta, tarjeta % 2 == 0 ? "MASTERCARD" : "VISA", cliente);
+            }
+        }
+        jdbcTemplate.update("INSERT INTO administrador (administrador_correo, administrador_contrasena) VALUES (?, ?)",
+                "admin@gmail.com", hash);
+    }
+
+    @Test
+    void obtenerTarjetaPorId_DebeUsarUnaSentenciaYNingunaConLaCacheCaliente() throws Exception {
+        mockMvc.perform(get("/api/tarjetas/1"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+
+        mockMvc.perform(get("/api/tarjetas/1"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(0));
+    }
+
+    @Test
+    void obtenerTarjetasConClientes_DebeUsarUnaSentenciaSinCargasPerezosas() throws Exception {
+        mockMvc.perform(get("/api/tarjetas/con-clientes"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void obtenerTarjetasPaginadas_DebeUsarUnaSentencia() throws Exception {
+        mockMvc.perform(get("/api/tarjetas").param("tamano", "5"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void buscarTarjetas_DebeUsarUnaSentencia() throws Exception {
+        mockMvc.perform(get("/api/tarjetas/buscar").param("franquicia", "VISA").param("correo", "cliente1@gmail.com"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void obtenerTarjetasPorCliente_DebeUsarUnaSentencia() throws Exception {
+        mockMvc.perform(get("/api/tarjetas/cliente/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void obtenerTarjetasDeCliente_DebeUsarUnaSentencia() throws Exception {
+        mockMvc.perform(get("/clientes/3/tarjetas"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void obtenerAgregados_DebeUsarUnaSentenciaPorAgrupacion() throws Exception {
+        mockMvc.perform(get("/api/tarjetas/agregados").param("por", "estado"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+
+        mockMvc.perform(get("/api/tarjetas/agregados").param("por", "cliente").param("tamano", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.contenido[0].clienteId").value(1))
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void emitirTarjetasEnLote_DebeInsertarElBloqueConUnBatch() throws Exception {
+        // Clientes existentes, numeros ya emitidos y un batch para el bloque, dentro de su transaccion
+        mockMvc.perform(post("/api/tarjetas/lote")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"clienteId":1,"tarjetaNumero":"5500000000000101","tarjetaFechaVencimiento":"12/2030",
+                                  "tarjetaFranquicia":"MASTERCARD","tarjetaCupoTotal":500.00,"tarjetaCupoDisponible":500.00},
+                                 {"clienteId":1,"tarjetaNumero":"5500000000000102","tarjetaFechaVencimiento":"12/2030",
+                                  "tarjetaFranquicia":"MASTERCARD","tarjetaCupoTotal":500.00,"tarjetaCupoDisponible":500.00}]
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.exitosas").value(2))
+                .andExpect(sentenciasSql(3));
+    }
+
+    @Test
+    void login_Cliente_DebeUsarUnaSentencia() throws Exception {
+        mockMvc.perform(post("/clientes/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"correo\":\"cliente4@gmail.com\",\"contrasena\":\"clave123\"}"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+    }
+
+    @Test
+    void login_Administrador_DebeUsarUnaSentencia() throws Exception {
+        mockMvc.perform(post("/clientes/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"correo\":\"admin@gmail.com\",\"contrasena\":\"clave123\"}"))
+                .andExpect(status().isOk())
+                .andExpect(sentenciasSql(1));
+    }
+}
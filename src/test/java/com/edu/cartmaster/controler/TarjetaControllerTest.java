@@ -1,21 +1,50 @@
 package com.edu.cartmaster.controler;
 
+import com.edu.cartmaster.dto.AgregadoCliente;
+import com.edu.cartmaster.dto.AgregadoTarjetas;
+import com.edu.cartmaster.dto.CambioEstadoLote;
+import com.edu.cartmaster.dto.CambiosTarjeta;
+import com.edu.cartmaster.dto.EmisionTarjeta;
+import com.edu.cartmaster.dto.FiltroTarjetas;
+import com.edu.cartmaster.dto.PaginaCursor;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.ResultadoLote.ResultadoFila;
+import com.edu.cartmaster.dto.TarjetaConCliente;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Cliente;
 import com.edu.cartmaster.model.Tarjeta;
+import com.edu.cartmaster.service.AgrupacionTarjetas;
+import com.edu.cartmaster.service.ResultadoCupo;
 import com.edu.cartmaster.service.TarjetaService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
-
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
 import java.util.*;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -46,25 +75,56 @@ class TarjetaControllerTest {
         tarjeta.setTarjetaId(1);
         tarjeta.setTarjetaNumero("4111111111111111");
         tarjeta.setTarjetaEstado("ACTIVO");
-        tarjeta.setTarjetaCupoTotal(1000.0);
-        tarjeta.setTarjetaCupoDisponible(1000.0);
+        tarjeta.setTarjetaCupoTotal(new BigDecimal("1000.00"));
+        tarjeta.setTarjetaCupoDisponible(new BigDecimal("1000.00"));
         tarjeta.setCliente(cliente);
     }
 
     @Test
-    void obtenerTodasLasTarjetas_DebeRetornarListaDeTarjetas() throws Exception {
-        List<Tarjeta> tarjetas = Arrays.asList(tarjeta);
-        when(tarjetaService.obtenerTodasLasTarjetas()).thenReturn(tarjetas);
+    void obtenerTodasLasTarjetas_DebeRetornarPaginaDeTarjetas() throws Exception {
+        PaginaCursor<TarjetaRespuesta> pagina = new PaginaCursor<>(List.of(TarjetaRespuesta.de(tarjeta)), 1);
+        when(tarjetaService.obtenerTarjetasPaginadas(null, 50)).thenReturn(pagina);
 
         mockMvc.perform(get("/api/tarjetas"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(1))
-                .andExpect(jsonPath("$[0].tarjetaNumero").value(tarjeta.getTarjetaNumero()));
+                .andExpect(jsonPath("$.contenido.length()").value(1))
+                .andExpect(jsonPath("$.contenido[0].tarjetaNumero").value(tarjeta.getTarjetaNumero()))
+                .andExpect(jsonPath("$.siguiente").value(1));
+    }
+
+    @Test
+    void obtenerTodasLasTarjetas_ConTamanoMayorAlMaximo_DebeLimitarTamano() throws Exception {
+        when(tarjetaService.obtenerTarjetasPaginadas(10, 500)).thenReturn(new PaginaCursor<>(List.of(), null));
+
+        mockMvc.perform(get("/api/tarjetas").param("desde", "10").param("tamano", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.contenido.length()").value(0))
+                .andExpect(jsonPath("$.siguiente").doesNotExist());
+    }
+
+    @Test
+    void buscarTarjetas_DebeArmarElFiltroDesdeLosParametros() throws Exception {
+        FiltroTarjetas filtro = new FiltroTarjetas("ACTIVO", "VISA", null, "12/2027", null, null, new BigDecimal("500.00"), null,
+                "test@gmail.com");
+        when(tarjetaService.buscarTarjetas(filtro, 10, 20))
+                .thenReturn(new PaginaCursor<>(List.of(TarjetaRespuesta.de(tarjeta)), null));
+
+        mockMvc.perform(get("/api/tarjetas/buscar")
+                        .param("estado", "ACTIVO")
+                        .param("franquicia", "VISA")
+                        .param("venceHasta", "12/2027")
+                        .param("cupoDisponibleMin", "500.00")
+                        .param("clienteCorreo", "test@gmail.com")
+                        .param("desde", "10")
+                        .param("tamano", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.contenido[0].tarjetaNumero").value(tarjeta.getTarjetaNumero()))
+                .andExpect(jsonPath("$.siguiente").doesNotExist());
     }
 
     @Test
     void obtenerTarjetasPorCliente_DebeRetornarTarjetasDelCliente() throws Exception {
-        List<Tarjeta> tarjetas = Arrays.asList(tarjeta);
+        List<TarjetaRespuesta> tarjetas = List.of(TarjetaRespuesta.de(tarjeta));
         when(tarjetaService.obtenerTarjetasPorClienteId(1)).thenReturn(tarjetas);
 
         mockMvc.perform(get("/api/tarjetas/cliente/1"))
@@ -75,11 +135,12 @@ class TarjetaControllerTest {
 
     @Test
     void obtenerTarjetaPorId_TarjetaExistente_DebeRetornarTarjeta() throws Exception {
-        when(tarjetaService.obtenerTarjetaPorId(1)).thenReturn(Optional.of(tarjeta));
+        when(tarjetaService.obtenerTarjetaPorId(1)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         mockMvc.perform(get("/api/tarjetas/1"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.tarjetaNumero").value(tarjeta.getTarjetaNumero()));
+                .andExpect(jsonPath("$.tarjetaNumero").value(tarjeta.getTarjetaNumero()))
+                .andExpect(jsonPath("$.cliente").doesNotExist());
     }
 
     @Test
@@ -90,9 +151,94 @@ class TarjetaControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void obtenerTarjetaPorId_SinConexionDisponible_DebeRetornarServiceUnavailable() throws Exception {
+        when(tarjetaService.obtenerTarjetaPorId(1))
+                .thenThrow(new CannotCreateTransactionException("Could not open JPA EntityManager for transaction",
+                        new SQLTransientConnectionException("cartmaster - Connection is not available, request timed out after 2000ms")));
+
+        mockMvc.perform(get("/api/tarjetas/1"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.error").value("SERVICIO_SATURADO"));
+    }
+
+    @Test
+    void obtenerTarjetaPorId_BaseDeDatosCaida_NoDebeRetornarServiceUnavailable() {
+        when(tarjetaService.obtenerTarjetaPorId(1))
+                .thenThrow(new CannotCreateTransactionException("Could not open JPA EntityManager for transaction",
+                        new SQLNonTransientConnectionException("Communications link failure")));
+
+        ServletException error = assertThrows(ServletException.class, () -> mockMvc.perform(get("/api/tarjetas/1")));
+        assertInstanceOf(CannotCreateTransactionException.class, error.getCause());
+    }
+
+    @Test
+    void obtenerTarjetasConClientes_DebeRetornarTarjetasConDatosDelCliente() throws Exception {
+        TarjetaConCliente fila = new TarjetaConCliente(1, "4111111111111111", "12/2030", "VISA", "ACTIVO",
+                new BigDecimal("1000.00"), new BigDecimal("800.00"), new BigDecimal("200.00"), 1, "Test User", "test@gmail.com");
+        when(tarjetaService.obtenerTarjetasConClientes()).thenReturn(List.of(fila));
+
+        mockMvc.perform(get("/api/tarjetas/con-clientes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].numeroTarjeta").value("4111111111111111"))
+                .andExpect(jsonPath("$[0].cupoUtilizado").value(200.0))
+                .andExpect(jsonPath("$[0].cliente.id").value(1))
+                .andExpect(jsonPath("$[0].cliente.nombre").value("Test User"))
+                .andExpect(jsonPath("$[0].cliente.correo").value("test@gmail.com"));
+    }
+
+    @Test
+    void exportarTarjetasConClientes_DebeRetornarNdjson() throws Exception {
+        doAnswer(invocacion -> {
+            OutputStream salida = invocacion.getArgument(0);
+            salida.write("{\"tarjetaId\":1}\n{\"tarjetaId\":2}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(tarjetaService).exportarTarjetasConClientes(any(OutputStream.class));
+
+        MvcResult resultado = mockMvc.perform(get("/api/tarjetas/con-clientes/exportar"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"tarjetaId\":1}\n{\"tarjetaId\":2}\n"));
+    }
+
+    @Test
+    void obtenerAgregados_PorFranquicia_DebeRetornarTotalesPorGrupo() throws Exception {
+        when(tarjetaService.obtenerAgregados(AgrupacionTarjetas.FRANQUICIA)).thenReturn(List.of(
+                new AgregadoTarjetas("VISA", 2L, new BigDecimal("3000.00"), new BigDecimal("1800.00"), new BigDecimal("1200.00"))));
+
+        mockMvc.perform(get("/api/tarjetas/agregados").param("por", "franquicia"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].grupo").value("VISA"))
+                .andExpect(jsonPath("$[0].tarjetas").value(2))
+                .andExpect(jsonPath("$[0].cupoUtilizado").value(1200.0));
+    }
+
+    @Test
+    void obtenerAgregados_PorCliente_DebeRetornarPaginaPorCursor() throws Exception {
+        when(tarjetaService.obtenerAgregadosPorCliente(7, 500)).thenReturn(new PaginaCursor<>(List.of(
+                new AgregadoCliente(8, 1L, new BigDecimal("100.00"), new BigDecimal("100.00"), new BigDecimal("0.00"))), null));
+
+        mockMvc.perform(get("/api/tarjetas/agregados").param("por", "cliente").param("desde", "7").param("tamano", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.contenido[0].clienteId").value(8))
+                .andExpect(jsonPath("$.siguiente").doesNotExist());
+    }
+
+    @Test
+    void obtenerAgregados_AgrupacionInvalida_DebeRetornarBadRequest() throws Exception {
+        mockMvc.perform(get("/api/tarjetas/agregados").param("por", "pais"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void crearTarjeta_DatosValidos_DebeRetornarCreated() throws Exception {
-        when(tarjetaService.registrarTarjeta(any(Tarjeta.class), eq(1))).thenReturn(tarjeta);
+        when(tarjetaService.registrarTarjeta(any(Tarjeta.class), eq(1))).thenReturn(TarjetaRespuesta.de(tarjeta));
 
         mockMvc.perform(post("/api/tarjetas/crear/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -101,9 +247,122 @@ class TarjetaControllerTest {
                 .andExpect(jsonPath("$.tarjetaNumero").value(tarjeta.getTarjetaNumero()));
     }
 
+    @Test
+    void crearTarjeta_ConCupoNegativo_DebeRetornarBadRequest() throws Exception {
+        when(tarjetaService.registrarTarjeta(any(Tarjeta.class), eq(1)))
+                .thenThrow(new IllegalArgumentException("Los cupos son inválidos"));
+
+        mockMvc.perform(post("/api/tarjetas/crear/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tarjetaNumero\":\"4111111111111111\",\"tarjetaCupoTotal\":-1}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.mensaje").value("Los cupos son inválidos"));
+    }
+
+    @Test
+    void emitirTarjetasEnLote_DebeRetornarReportePorFila() throws Exception {
+        List<EmisionTarjeta> emisiones = List.of(
+                new EmisionTarjeta(1, "4111111111111111", "12/2030", "VISA", null, new BigDecimal("1000.00"), new BigDecimal("1000.00")));
+        when(tarjetaService.emitirTarjetasEnLote(emisiones)).thenReturn(ResultadoLote.de(List.of(
+                new ResultadoFila(0, "4111111111111111", ResultadoLote.REGISTRADO, null))));
+
+        mockMvc.perform(post("/api/tarjetas/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(emisiones)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.exitosas").value(1))
+                .andExpect(jsonPath("$.filas[0].referencia").value("4111111111111111"));
+    }
+
+    @Test
+    void actualizarParcialmente_ConMergePatch_DebeEnviarSoloLosCamposPresentes() throws Exception {
+        CambiosTarjeta cambios = new CambiosTarjeta(null, null, null, "BLOQUEADO", null, null);
+        tarjeta.setTarjetaEstado("BLOQUEADO");
+        when(tarjetaService.actualizarParcialmente(1, cambios)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
+
+        mockMvc.perform(patch("/api/tarjetas/1")
+                .contentType("application/merge-patch+json")
+                .content("{\"tarjetaEstado\":\"BLOQUEADO\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tarjetaEstado").value("BLOQUEADO"));
+    }
+
+    @Test
+    void actualizarParcialmente_ConVersionDesactualizada_DebeRetornarConflict() throws Exception {
+        CambiosTarjeta cambios = new CambiosTarjeta(null, null, null, "BLOQUEADO", null, null, 2L);
+        when(tarjetaService.actualizarParcialmente(1, cambios))
+                .thenThrow(new OptimisticLockingFailureException("La tarjeta 1 fue modificada por otra petición"));
+
+        mockMvc.perform(patch("/api/tarjetas/1")
+                .contentType("application/merge-patch+json")
+                .content("{\"tarjetaEstado\":\"BLOQUEADO\",\"tarjetaVersion\":2}"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("VERSION_DESACTUALIZADA"));
+    }
+
+    @Test
+    void actualizarParcialmente_ConNumeroDuplicado_DebeRetornarConflict() throws Exception {
+        CambiosTarjeta cambios = new CambiosTarjeta("5500000000000004", null, null, null, null, null);
+        when(tarjetaService.actualizarParcialmente(1, cambios))
+                .thenThrow(new DuplicateKeyException("Duplicate entry '5500000000000004'"));
+
+        mockMvc.perform(patch("/api/tarjetas/1")
+                .contentType("application/merge-patch+json")
+                .content("{\"tarjetaNumero\":\"5500000000000004\"}"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("TARJETA_DUPLICADA"));
+    }
+
+    @Test
+    void actualizarDatosGenerales_ConNumeroDuplicado_DebeRetornarConflict() throws Exception {
+        when(tarjetaService.actualizarDatosGeneralesTarjeta(eq(1), any(Tarjeta.class)))
+                .thenThrow(new DuplicateKeyException("Duplicate entry '5500000000000004'"));
+
+        mockMvc.perform(put("/api/tarjetas/actualizar_generales/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tarjetaNumero\":\"5500000000000004\"}"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.mensaje").value("La tarjeta ya está registrada"));
+    }
+
+    @Test
+    void actualizarTarjeta_ConOtraViolacionDeIntegridad_DebeRetornarBadRequest() throws Exception {
+        when(tarjetaService.actualizarTarjeta(eq(1), any(Tarjeta.class)))
+                .thenThrow(new DataIntegrityViolationException("Data too long for column 'tarjeta_franquicia'"));
+
+        mockMvc.perform(put("/api/tarjetas/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tarjetaFranquicia\":\"" + "X".repeat(100) + "\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("CAMBIO_INVALIDO"));
+    }
+
+    @Test
+    void actualizarParcialmente_ConCupoInvalido_DebeRetornarBadRequest() throws Exception {
+        when(tarjetaService.actualizarParcialmente(eq(1), any(CambiosTarjeta.class)))
+                .thenThrow(new IllegalArgumentException("Los cupos son inválidos"));
+
+        mockMvc.perform(patch("/api/tarjetas/1")
+                .contentType("application/merge-patch+json")
+                .content("{\"tarjetaCupoDisponible\":-50}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("CAMBIO_INVALIDO"))
+                .andExpect(jsonPath("$.mensaje").value("Los cupos son inválidos"));
+    }
+
+    @Test
+    void actualizarParcialmente_TarjetaNoExistente_DebeRetornarNotFound() throws Exception {
+        when(tarjetaService.actualizarParcialmente(eq(999), any(CambiosTarjeta.class))).thenReturn(Optional.empty());
+
+        mockMvc.perform(patch("/api/tarjetas/999")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tarjetaCupoTotal\":3000}"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void actualizarTarjeta_TarjetaExistente_DebeRetornarOk() throws Exception {
-        when(tarjetaService.actualizarTarjeta(eq(1), any(Tarjeta.class))).thenReturn(Optional.of(tarjeta));
+        when(tarjetaService.actualizarTarjeta(eq(1), any(Tarjeta.class))).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         mockMvc.perform(put("/api/tarjetas/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -114,7 +373,7 @@ class TarjetaControllerTest {
 
     @Test
     void actualizarTarjetaConCupos_TarjetaExistente_DebeRetornarOk() throws Exception {
-        when(tarjetaService.actualizarTarjetaConCupos(eq(1), any(Tarjeta.class))).thenReturn(Optional.of(tarjeta));
+        when(tarjetaService.actualizarTarjetaConCupos(eq(1), any(Tarjeta.class))).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         mockMvc.perform(put("/api/tarjetas/actualizar_con_cupos/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -125,7 +384,7 @@ class TarjetaControllerTest {
 
     @Test
     void actualizarDatosGenerales_TarjetaExistente_DebeRetornarOk() throws Exception {
-        when(tarjetaService.actualizarDatosGeneralesTarjeta(eq(1), any(Tarjeta.class))).thenReturn(Optional.of(tarjeta));
+        when(tarjetaService.actualizarDatosGeneralesTarjeta(eq(1), any(Tarjeta.class))).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         mockMvc.perform(put("/api/tarjetas/actualizar_generales/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -137,20 +396,45 @@ class TarjetaControllerTest {
     @Test
     void inactivarTarjeta_TarjetaExistente_DebeRetornarOk() throws Exception {
         tarjeta.setTarjetaEstado("INACTIVO");
-        when(tarjetaService.inactivarTarjeta(1)).thenReturn(Optional.of(tarjeta));
+        when(tarjetaService.inactivarTarjeta(1)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         mockMvc.perform(delete("/api/tarjetas/1"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.tarjetaEstado").value("INACTIVO"));
     }
 
+    @Test
+    void cambiarEstadoEnLote_PorFranquicia_DebeRetornarAfectadas() throws Exception {
+        CambioEstadoLote solicitud = new CambioEstadoLote("BLOQUEADO", null, "VISA", null, null);
+        when(tarjetaService.cambiarEstadoEnLote(solicitud)).thenReturn(1200);
+
+        mockMvc.perform(post("/api/tarjetas/estado/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(solicitud)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.estado").value("BLOQUEADO"))
+                .andExpect(jsonPath("$.afectadas").value(1200));
+    }
+
+    @Test
+    void cambiarEstadoEnLote_SolicitudInvalida_DebeRetornarBadRequest() throws Exception {
+        when(tarjetaService.cambiarEstadoEnLote(any(CambioEstadoLote.class)))
+                .thenThrow(new IllegalArgumentException("El estado es obligatorio"));
+
+        mockMvc.perform(post("/api/tarjetas/estado/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tarjetaFranquicia\":\"VISA\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("El estado es obligatorio"));
+    }
+
     @Test
     void actualizarCupoDisponible_TarjetaExistente_DebeRetornarOk() throws Exception {
-        Map<String, Double> request = new HashMap<>();
-        request.put("tarjetaCupoDisponible", 2000.0);
+        Map<String, BigDecimal> request = new HashMap<>();
+        request.put("tarjetaCupoDisponible", new BigDecimal("2000.00"));
 
-        tarjeta.setTarjetaCupoDisponible(2000.0);
-        when(tarjetaService.actualizarCupoDisponible(eq(1), eq(2000.0))).thenReturn(Optional.of(tarjeta));
+        tarjeta.setTarjetaCupoDisponible(new BigDecimal("2000.00"));
+        when(tarjetaService.actualizarCupoDisponible(eq(1), eq(new BigDecimal("2000.00")), isNull())).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         mockMvc.perform(put("/api/tarjetas/actualizar_cupo_disponible/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -159,4 +443,64 @@ class TarjetaControllerTest {
                 .andExpect(jsonPath("$.tarjetaCupoDisponible").value(2000.0));
     }
 
-} 
\ No newline at end of file
+    @Test
+    void actualizarCupoDisponible_SinCampoCupo_DebeRetornarBadRequest() throws Exception {
+        mockMvc.perform(put("/api/tarjetas/actualizar_cupo_disponible/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"cupo\":2000}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("CUPO_INVALIDO"));
+    }
+
+    @Test
+    void consumirCupo_ConMasDeDosDecimales_DebeRetornarBadRequest() throws Exception {
+        mockMvc.perform(post("/api/tarjetas/1/consumir_cupo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"monto\":10.005}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("MONTO_INVALIDO"));
+    }
+
+    @Test
+    void consumirCupo_ConCupoSuficiente_DebeRetornarOk() throws Exception {
+        when(tarjetaService.consumirCupo(1, new BigDecimal("150.00"))).thenReturn(ResultadoCupo.APLICADO);
+
+        mockMvc.perform(post("/api/tarjetas/1/consumir_cupo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("monto", new BigDecimal("150.00")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resultado").value("APLICADO"));
+    }
+
+    @Test
+    void consumirCupo_SinCupoSuficiente_DebeRetornarConflict() throws Exception {
+        when(tarjetaService.consumirCupo(1, new BigDecimal("5000.00"))).thenReturn(ResultadoCupo.CUPO_INSUFICIENTE);
+
+        mockMvc.perform(post("/api/tarjetas/1/consumir_cupo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("monto", new BigDecimal("5000.00")))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("CUPO_INSUFICIENTE"));
+    }
+
+    @Test
+    void reembolsarCupo_TarjetaInactiva_DebeRetornarConflictConSuPropioError() throws Exception {
+        when(tarjetaService.reembolsarCupo(1, new BigDecimal("100.00"))).thenReturn(ResultadoCupo.TARJETA_INACTIVA);
+
+        mockMvc.perform(post("/api/tarjetas/1/reembolsar_cupo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("monto", new BigDecimal("100.00")))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("TARJETA_INACTIVA"));
+    }
+
+    @Test
+    void reembolsarCupo_SinMonto_DebeRetornarBadRequest() throws Exception {
+        mockMvc.perform(post("/api/tarjetas/1/reembolsar_cupo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("MONTO_INVALIDO"));
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.edu.cartmaster.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InsercionLoteTest {
+
+    private static final String SQL = "INSERT INTO t (c) VALUES (?)";
+    private static final String SQL_FILA = SQL + " ON DUPLICATE KEY UPDATE id = id";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final Connection conexion = mock(Connection.class);
+    private final Savepoint savepoint = mock(Savepoint.class);
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // El callback recibe la conexion de la transaccion en curso (autocommit desactivado)
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocacion -> invocacion.<ConnectionCallback<?>>getArgument(0).doInConnection(conexion));
+        when(conexion.setSavepoint()).thenReturn(savepoint);
+    }
+
+    @Test
+    void insertar_BatchCompleto_DebeReportarTodasInsertadasSinRepetirFilaPorFila() throws SQLException {
+        when(jdbcTemplate.batchUpdate(eq(SQL), anyList(), eq(3), any(ParameterizedPreparedStatementSetter.class)))
+                .thenReturn(new int[][]{{-2, -2, -2}});
+
+        int[] resultado = InsercionLote.insertar(jdbcTemplate, SQL, SQL_FILA, List.of("a", "b", "c"), (ps, valor) -> { });
+
+        assertArrayEquals(new int[]{InsercionLote.INSERTADA, InsercionLote.INSERTADA, InsercionLote.INSERTADA}, resultado);
+        verify(conexion).releaseSavepoint(savepoint);
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+    }
+
+    @Test
+    void insertar_BatchConFilaRechazada_DebeDeshacerloYRepetirFilaPorFila() throws SQLException {
+        when(jdbcTemplate.batchUpdate(eq(SQL), anyList(), eq(3), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DuplicateKeyException("Duplicate entry 'b'"));
+        // Fila por fila: la primera se inserta, la segunda ya existia y la FK de la tercera falla
+        when(jdbcTemplate.update(eq(SQL_FILA), any(PreparedStatementSetter.class)))
+                .thenReturn(1)
+                .thenReturn(0)
+                .thenThrow(new DataIntegrityViolationException("Cannot add or update a child row"));
+
+        int[] resultado = InsercionLote.insertar(jdbcTemplate, SQL, SQL_FILA, List.of("a", "b", "c"), (ps, valor) -> { });
+
+        assertArrayEquals(new int[]{InsercionLote.INSERTADA, InsercionLote.DUPLICADA, InsercionLote.FALLIDA}, resultado);
+        verify(conexion).rollback(savepoint);
+        verify(conexion, never()).releaseSavepoint(any());
+    }
+
+    @Test
+    void insertar_SinTransaccion_DebeRechazarseAntesDelBatch() throws SQLException {
+        when(conexion.getAutoCommit()).thenReturn(true);
+
+        assertThrows(IllegalStateException.class,
+                () -> InsercionLote.insertar(jdbcTemplate, SQL, SQL_FILA, List.of("a"), (ps, valor) -> { }));
+        verifyNoInteractions(savepoint);
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void insertar_ErrorDeConexion_DebePropagarseSinRepetirFilaPorFila() {
+        DataAccessResourceFailureException error = new DataAccessResourceFailureException("sin conexion",
+                new SQLException("Communications link failure"));
+        when(jdbcTemplate.batchUpdate(eq(SQL), anyList(), eq(2), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(error);
+
+        assertSame(error, assertThrows(DataAccessResourceFailureException.class,
+                () -> InsercionLote.insertar(jdbcTemplate, SQL, SQL_FILA, List.of("a", "b"), (ps, valor) -> { })));
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+    }
+}
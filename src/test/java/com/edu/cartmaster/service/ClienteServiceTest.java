@@ -1,21 +1,37 @@
 package com.edu.cartmaster.service;
 
-import com.edu.cartmaster.model.Administrador;
+import com.edu.cartmaster.dto.ClienteRespuesta;
+import com.edu.cartmaster.dto.CredencialPrincipal;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Cliente;
 import com.edu.cartmaster.model.Tarjeta;
 import com.edu.cartmaster.repository.AdministradorRepostory;
+import com.edu.cartmaster.repository.ClienteLoteRepository;
 import com.edu.cartmaster.repository.ClienteRepository;
 import com.edu.cartmaster.repository.TarjetaRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class ClienteServiceTest {
@@ -26,15 +42,34 @@ class ClienteServiceTest {
     @Mock
     private TarjetaRepository tarjetaRepository;
 
+    @Mock
+    private ClienteLoteRepository clienteLoteRepository;
+
     @Mock
     private AdministradorRepostory administradorRepository;
 
+    @Mock
+    private CacheTarjetas cacheTarjetas;
+
+    @Mock
+    private TarjetasClienteService tarjetasClienteService;
+
+    @Spy
+    private VerificadorContrasenas verificadorContrasenas = new VerificadorContrasenas(new SimpleMeterRegistry(), 4, 1, 16, 5000, 1);
+
+    @Spy
+    private CacheCredenciales cacheCredenciales = new CacheCredenciales(100, Duration.ofMinutes(10), Duration.ofMinutes(1));
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private ClienteService clienteService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(clienteService, "tamanoBloque", 2);
     }
 
     @Test
@@ -45,16 +80,17 @@ class ClienteServiceTest {
         cliente.setClienteContrasena("password123");
         cliente.setClienteNombre("Test User");
 
-        when(clienteRepository.findByClienteCorreo(cliente.getClienteCorreo())).thenReturn(Optional.empty());
-        when(clienteRepository.save(any(Cliente.class))).thenReturn(cliente);
+        when(clienteRepository.saveAndFlush(any(Cliente.class))).thenReturn(cliente);
 
         // Act
-        Cliente resultado = clienteService.registrarCliente(cliente);
+        ClienteRespuesta resultado = clienteService.registrarCliente(cliente);
 
         // Assert
         assertNotNull(resultado);
-        assertEquals(cliente.getClienteCorreo(), resultado.getClienteCorreo());
-        verify(clienteRepository).save(any(Cliente.class));
+        assertEquals(cliente.getClienteCorreo(), resultado.clienteCorreo());
+        assertTrue(new BCryptPasswordEncoder().matches("password123", cliente.getClienteContrasena()));
+        verify(clienteRepository).saveAndFlush(any(Cliente.class));
+        verify(clienteRepository, never()).findByClienteCorreo(any());
     }
 
     @Test
@@ -62,18 +98,38 @@ class ClienteServiceTest {
         // Arrange
         Cliente cliente = new Cliente();
         cliente.setClienteCorreo("existente@gmail.com");
+        cliente.setClienteContrasena("password123");
+        cliente.setClienteNombre("Test User");
 
-        when(clienteRepository.findByClienteCorreo(cliente.getClienteCorreo()))
-                .thenReturn(Optional.of(new Cliente()));
+        when(clienteRepository.saveAndFlush(any(Cliente.class)))
+                .thenThrow(new DataIntegrityViolationException("could not execute statement",
+                        new SQLIntegrityConstraintViolationException("Duplicate entry 'existente@gmail.com'", "23000", 1062)));
 
         // Act & Assert
-        Exception exception = assertThrows(RuntimeException.class, () -> {
+        Exception exception = assertThrows(DuplicateKeyException.class, () -> {
             clienteService.registrarCliente(cliente);
         });
 
         assertEquals("El correo ya está registrado", exception.getMessage());
     }
 
+    @Test
+    void registrarCliente_ConOtraViolacionDeIntegridad_DebePropagarLaExcepcion() {
+        Cliente cliente = new Cliente();
+        cliente.setClienteCorreo("nuevo@gmail.com");
+        cliente.setClienteContrasena("password123");
+        cliente.setClienteNombre("N".repeat(300));
+        DataIntegrityViolationException violacion = new DataIntegrityViolationException("could not execute statement",
+                new SQLIntegrityConstraintViolationException("Data too long for column 'cliente_nombre'", "22001", 1406));
+
+        when(clienteRepository.saveAndFlush(any(Cliente.class))).thenThrow(violacion);
+
+        Exception exception = assertThrows(DataIntegrityViolationException.class,
+                () -> clienteService.registrarCliente(cliente));
+
+        assertSame(violacion, exception);
+    }
+
     @Test
     void registrarCliente_ConCorreoInvalido_DebeLanzarExcepcion() {
         // Arrange
@@ -102,16 +158,70 @@ class ClienteServiceTest {
         assertEquals("Solo se permiten correos con dominios @gmail.com o @correo.com", exception.getMessage());
     }
 
+    @Test
+    void registrarCliente_SinNombreOContrasena_DebeRechazarseSinHashNiInsert() {
+        // Arrange
+        Cliente sinNombre = new Cliente();
+        sinNombre.setClienteCorreo("nuevo@gmail.com");
+        sinNombre.setClienteContrasena("password123");
+        Cliente sinContrasena = new Cliente();
+        sinContrasena.setClienteCorreo("nuevo@gmail.com");
+        sinContrasena.setClienteNombre("Nuevo");
+
+        // Act & Assert
+        assertEquals("El nombre es obligatorio", assertThrows(IllegalArgumentException.class,
+                () -> clienteService.registrarCliente(sinNombre)).getMessage());
+        assertEquals("La contraseña es obligatoria", assertThrows(IllegalArgumentException.class,
+                () -> clienteService.registrarCliente(sinContrasena)).getMessage());
+        verify(clienteRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void registrarClientesEnLote_DebeReportarElResultadoDeCadaFila() {
+        // Arrange
+        List<Cliente> clientes = List.of(
+                nuevoCliente("Ana", "ana@gmail.com"),
+                nuevoCliente("Mal", "sin-arroba"),
+                nuevoCliente("Ana2", "ana@gmail.com"),
+                nuevoCliente("Beto", "beto@correo.com"),
+                nuevoCliente("Caro", "caro@gmail.com"),
+                nuevoCliente("Dani", "dani@gmail.com"));
+
+        when(clienteRepository.findCorreosExistentes(List.of("ana@gmail.com", "beto@correo.com")))
+                .thenReturn(List.of("beto@correo.com"));
+        when(clienteRepository.findCorreosExistentes(List.of("caro@gmail.com", "dani@gmail.com")))
+                .thenReturn(List.of());
+        doReturn(new int[]{1}).when(clienteLoteRepository).insertarLote(argThat(lote -> lote.size() == 1));
+        // Dani se registro en paralelo entre la consulta de duplicados y la insercion
+        doReturn(new int[]{1, 0}).when(clienteLoteRepository).insertarLote(argThat(lote -> lote.size() == 2));
+
+        // Act
+        ResultadoLote resultado = clienteService.registrarClientesEnLote(clientes);
+
+        // Assert
+        assertEquals(6, resultado.procesadas());
+        assertEquals(2, resultado.exitosas());
+        assertEquals(4, resultado.fallidas());
+        assertEquals(ResultadoLote.REGISTRADO, resultado.filas().get(0).estado());
+        assertEquals(ResultadoLote.RECHAZADO, resultado.filas().get(1).estado());
+        assertEquals(ResultadoLote.DUPLICADO, resultado.filas().get(2).estado());
+        assertEquals(ResultadoLote.DUPLICADO, resultado.filas().get(3).estado());
+        assertEquals(ResultadoLote.REGISTRADO, resultado.filas().get(4).estado());
+        assertEquals(ResultadoLote.DUPLICADO, resultado.filas().get(5).estado());
+        verify(clienteLoteRepository, times(2)).insertarLote(argThat(lote ->
+                lote.stream().allMatch(c -> verificadorContrasenas.esHash(c.getClienteContrasena()))));
+        // Una transaccion por bloque con filas nuevas
+        verify(transactionTemplate, times(2)).execute(any());
+    }
+
     @Test
     void login_ComoAdministrador_DebeRetornarMapaConTipoAdministrador() {
         // Arrange
         String correo = "admin@gmail.com";
         String contrasena = "admin123";
-        Administrador admin = new Administrador();
-        admin.setCorreo(correo);
-        admin.setContrasena(contrasena);
 
-        when(administradorRepository.findByCorreo(correo)).thenReturn(Optional.of(admin));
+        when(clienteRepository.buscarCredencialesPorCorreo(correo))
+                .thenReturn(List.of(principal("ADMINISTRADOR", 1, contrasena)));
 
         // Act
         Map<String, Object> resultado = clienteService.login(correo, contrasena);
@@ -119,6 +229,8 @@ class ClienteServiceTest {
         // Assert
         assertNotNull(resultado);
         assertEquals("ADMINISTRADOR", resultado.get("tipo"));
+        assertFalse(resultado.containsKey("clienteId"));
+        verify(administradorRepository).actualizarContrasena(eq(1), argThat(verificadorContrasenas::esHash));
     }
 
     @Test
@@ -126,12 +238,9 @@ class ClienteServiceTest {
         // Arrange
         String correo = "cliente@gmail.com";
         String contrasena = "cliente123";
-        Cliente cliente = new Cliente();
-        cliente.setClienteId(1);
-        cliente.setClienteCorreo(correo);
-        cliente.setClienteContrasena(contrasena);
 
-        when(clienteRepository.findByClienteCorreo(correo)).thenReturn(Optional.of(cliente));
+        when(clienteRepository.buscarCredencialesPorCorreo(correo))
+                .thenReturn(List.of(principal("CLIENTE", 1, contrasena)));
 
         // Act
         Map<String, Object> resultado = clienteService.login(correo, contrasena);
@@ -142,14 +251,53 @@ class ClienteServiceTest {
         assertEquals(1, resultado.get("clienteId"));
     }
 
+    @Test
+    void login_CorreoDeAdministradorYCliente_DebeProbarElClienteSiNoCoincideElAdministrador() {
+        // Arrange
+        String correo = "ambos@gmail.com";
+        String hashAdministrador = new BCryptPasswordEncoder(4).encode("admin123");
+        String hashCliente = new BCryptPasswordEncoder(4).encode("cliente123");
+
+        when(clienteRepository.buscarCredencialesPorCorreo(correo)).thenReturn(List.of(
+                principal("ADMINISTRADOR", 1, hashAdministrador), principal("CLIENTE", 7, hashCliente)));
+
+        // Act
+        Map<String, Object> comoCliente = clienteService.login(correo, "cliente123");
+        Map<String, Object> comoAdministrador = clienteService.login(correo, "admin123");
+
+        // Assert
+        assertEquals("CLIENTE", comoCliente.get("tipo"));
+        assertEquals(7, comoCliente.get("clienteId"));
+        assertEquals("ADMINISTRADOR", comoAdministrador.get("tipo"));
+        assertNull(clienteService.login(correo, "otra"));
+    }
+
+    @Test
+    void login_ConContrasenaHasheada_DebeVerificarSinMigrar() {
+        // Arrange
+        String correo = "cliente@gmail.com";
+        String hash = new BCryptPasswordEncoder(4).encode("cliente123");
+
+        when(clienteRepository.buscarCredencialesPorCorreo(correo))
+                .thenReturn(List.of(principal("CLIENTE", 2, hash)));
+
+        // Act
+        Map<String, Object> valido = clienteService.login(correo, "cliente123");
+        Map<String, Object> invalido = clienteService.login(correo, "otra");
+
+        // Assert
+        assertEquals(2, valido.get("clienteId"));
+        assertNull(invalido);
+        verify(clienteRepository, never()).actualizarContrasena(any(), any());
+    }
+
     @Test
     void login_ConCredencialesInvalidas_DebeRetornarNull() {
         // Arrange
         String correo = "noexiste@gmail.com";
         String contrasena = "invalid";
 
-        when(administradorRepository.findByCorreo(correo)).thenReturn(Optional.empty());
-        when(clienteRepository.findByClienteCorreo(correo)).thenReturn(Optional.empty());
+        when(clienteRepository.buscarCredencialesPorCorreo(correo)).thenReturn(List.of());
 
         // Act
         Map<String, Object> resultado = clienteService.login(correo, contrasena);
@@ -158,16 +306,59 @@ class ClienteServiceTest {
         assertNull(resultado);
     }
 
+    @Test
+    void login_Repetido_DebeConsultarLaBaseDeDatosUnaSolaVez() {
+        // Arrange
+        String correo = "cliente@gmail.com";
+
+        when(clienteRepository.buscarCredencialesPorCorreo(correo))
+                .thenReturn(List.of(principal("CLIENTE", 1, "cliente123")));
+
+        // Act
+        clienteService.login(correo, "cliente123");
+        clienteService.login(correo, "incorrecta");
+        Map<String, Object> resultado = clienteService.login(correo, "cliente123");
+
+        // Assert
+        assertEquals(1, resultado.get("clienteId"));
+        verify(clienteRepository, times(1)).buscarCredencialesPorCorreo(correo);
+    }
+
+    @Test
+    void login_CorreoInexistenteLuegoRegistrado_DebeInvalidarLaCache() {
+        // Arrange
+        String correo = "nuevo@gmail.com";
+        Cliente cliente = new Cliente();
+        cliente.setClienteId(5);
+        cliente.setClienteCorreo(correo);
+        cliente.setClienteContrasena("clave");
+        cliente.setClienteNombre("Nuevo");
+
+        when(clienteRepository.buscarCredencialesPorCorreo(correo)).thenReturn(List.of());
+        when(clienteRepository.saveAndFlush(any(Cliente.class))).thenReturn(cliente);
+
+        // Act
+        assertNull(clienteService.login(correo, "clave"));
+        clienteService.registrarCliente(cliente);
+        when(clienteRepository.buscarCredencialesPorCorreo(correo))
+                .thenReturn(List.of(principal("CLIENTE", 5, "clave")));
+        Map<String, Object> resultado = clienteService.login(correo, "clave");
+
+        // Assert
+        assertNotNull(resultado);
+        assertEquals(5, resultado.get("clienteId"));
+    }
+
     @Test
     void obtenerTarjetasPorClienteId_DebeRetornarListaDeTarjetas() {
         // Arrange
         Integer clienteId = 1;
-        List<Tarjeta> tarjetasEsperadas = Arrays.asList(new Tarjeta(), new Tarjeta());
+        List<TarjetaRespuesta> tarjetasEsperadas = Arrays.asList(TarjetaRespuesta.de(new Tarjeta()), TarjetaRespuesta.de(new Tarjeta()));
 
-        when(tarjetaRepository.findByCliente_ClienteId(clienteId)).thenReturn(tarjetasEsperadas);
+        when(tarjetasClienteService.obtenerTarjetasPorClienteId(clienteId)).thenReturn(tarjetasEsperadas);
 
         // Act
-        List<Tarjeta> resultado = clienteService.obtenerTarjetasPorClienteId(clienteId);
+        List<TarjetaRespuesta> resultado = clienteService.obtenerTarjetasPorClienteId(clienteId);
 
         // Assert
         assertNotNull(resultado);
@@ -205,24 +396,23 @@ class ClienteServiceTest {
     void eliminarClienteYTarjetas_ClienteExistente_DebeEliminarClienteYTarjetas() {
         // Arrange
         Integer clienteId = 1;
-        Cliente cliente = new Cliente();
-        cliente.setClienteId(clienteId);
-
-        when(clienteRepository.findById(clienteId)).thenReturn(Optional.of(cliente));
+        when(tarjetaRepository.eliminarPorClienteIds(List.of(clienteId))).thenReturn(500);
+        when(clienteRepository.eliminarPorIds(List.of(clienteId))).thenReturn(1);
 
         // Act
         clienteService.eliminarClienteYTarjetas(clienteId);
 
         // Assert
-        verify(tarjetaRepository).deleteByClienteClienteId(clienteId);
-        verify(clienteRepository).delete(cliente);
+        verify(tarjetaRepository).eliminarPorClienteIds(List.of(clienteId));
+        verify(clienteRepository).eliminarPorIds(List.of(clienteId));
+        verify(clienteRepository, never()).findById(any(Integer.class));
     }
 
     @Test
     void eliminarClienteYTarjetas_ClienteNoExistente_DebeLanzarExcepcion() {
         // Arrange
         Integer clienteId = 999;
-        when(clienteRepository.findById(clienteId)).thenReturn(Optional.empty());
+        when(clienteRepository.eliminarPorIds(List.of(clienteId))).thenReturn(0);
 
         // Act & Assert
         Exception exception = assertThrows(RuntimeException.class, () -> {
@@ -231,4 +421,46 @@ class ClienteServiceTest {
 
         assertEquals("Cliente no encontrado con ID: " + clienteId, exception.getMessage());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void eliminarClientesYTarjetas_DebeEliminarPorBloques() {
+        // Arrange (tamanoBloque = 2)
+        when(clienteRepository.eliminarPorIds(List.of(1, 2))).thenReturn(2);
+        when(clienteRepository.eliminarPorIds(List.of(3))).thenReturn(0);
+
+        // Act
+        int eliminados = clienteService.eliminarClientesYTarjetas(List.of(1, 2, 2, 3));
+
+        // Assert
+        assertEquals(2, eliminados);
+        verify(tarjetaRepository).eliminarPorClienteIds(List.of(1, 2));
+        verify(tarjetaRepository).eliminarPorClienteIds(List.of(3));
+    }
+
+    private static CredencialPrincipal principal(String tipo, Integer id, String contrasena) {
+        return new CredencialPrincipal() {
+            @Override
+            public String getTipo() {
+                return tipo;
+            }
+
+            @Override
+            public Integer getId() {
+                return id;
+            }
+
+            @Override
+            public String getContrasena() {
+                return contrasena;
+            }
+        };
+    }
+
+    private static Cliente nuevoCliente(String nombre, String correo) {
+        Cliente cliente = new Cliente();
+        cliente.setClienteNombre(nombre);
+        cliente.setClienteCorreo(correo);
+        cliente.setClienteContrasena("clave123");
+        return cliente;
+    }
+}
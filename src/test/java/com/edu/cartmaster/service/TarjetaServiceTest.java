@@ -1,21 +1,47 @@
 package com.edu.cartmaster.service;
 
+import com.edu.cartmaster.dto.AgregadoCliente;
+import com.edu.cartmaster.dto.AgregadoTarjetas;
+import com.edu.cartmaster.dto.CambioEstadoLote;
+import com.edu.cartmaster.dto.CambiosTarjeta;
+import com.edu.cartmaster.dto.ClienteRespuesta;
+import com.edu.cartmaster.dto.EmisionTarjeta;
+import com.edu.cartmaster.dto.FiltroTarjetas;
+import com.edu.cartmaster.dto.PaginaCursor;
+import com.edu.cartmaster.dto.ResultadoLote;
+import com.edu.cartmaster.dto.TarjetaConCliente;
+import com.edu.cartmaster.dto.TarjetaRespuesta;
 import com.edu.cartmaster.model.Cliente;
 import com.edu.cartmaster.model.Tarjeta;
 import com.edu.cartmaster.repository.ClienteRepository;
+import com.edu.cartmaster.repository.InsercionLote;
+import com.edu.cartmaster.repository.TarjetaLoteRepository;
 import com.edu.cartmaster.repository.TarjetaRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.mockito.Spy;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 class TarjetaServiceTest {
@@ -26,12 +52,31 @@ class TarjetaServiceTest {
     @Mock
     private ClienteRepository clienteRepository;
 
+    @Mock
+    private TarjetaLoteRepository tarjetaLoteRepository;
+
+    @Mock
+    private CacheTarjetas cacheTarjetas;
+
+    @Mock
+    private TarjetasClienteService tarjetasClienteService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private TarjetaService tarjetaService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(tarjetaService, "tamanoBloque", 1000);
     }
 
     @Test
@@ -43,32 +88,38 @@ class TarjetaServiceTest {
         
         Tarjeta tarjeta = new Tarjeta();
         tarjeta.setTarjetaNumero("4111111111111111");
+        tarjeta.setTarjetaFechaVencimiento("12/2030");
+        tarjeta.setTarjetaFranquicia("VISA");
         tarjeta.setTarjetaEstado("ACTIVO");
-        tarjeta.setTarjetaCupoTotal(1000.0);
-        tarjeta.setTarjetaCupoDisponible(1000.0);
+        tarjeta.setTarjetaCupoTotal(new BigDecimal("1000.00"));
+        tarjeta.setTarjetaCupoDisponible(new BigDecimal("1000.00"));
 
         Tarjeta tarjetaGuardada = new Tarjeta();
         tarjetaGuardada.setTarjetaId(1);
         tarjetaGuardada.setTarjetaNumero("4111111111111111");
         tarjetaGuardada.setCliente(cliente);
         tarjetaGuardada.setTarjetaEstado("ACTIVO");
-        tarjetaGuardada.setTarjetaCupoTotal(1000.0);
-        tarjetaGuardada.setTarjetaCupoDisponible(1000.0);
+        tarjetaGuardada.setTarjetaCupoTotal(new BigDecimal("1000.00"));
+        tarjetaGuardada.setTarjetaCupoDisponible(new BigDecimal("1000.00"));
 
         // Mock behavior
-        when(clienteRepository.findById(clienteId)).thenReturn(Optional.of(cliente));
+        when(clienteRepository.buscarPorId(clienteId))
+                .thenReturn(Optional.of(new ClienteRespuesta(clienteId, "Test User", "test@gmail.com")));
+        when(clienteRepository.getReferenceById(clienteId)).thenReturn(cliente);
         when(tarjetaRepository.save(any(Tarjeta.class))).thenReturn(tarjetaGuardada);
 
         // Act
-        Tarjeta resultado = tarjetaService.registrarTarjeta(tarjeta, clienteId);
+        TarjetaRespuesta resultado = tarjetaService.registrarTarjeta(tarjeta, clienteId);
 
         // Assert
         assertNotNull(resultado);
-        assertEquals(cliente, resultado.getCliente());
-        assertEquals("4111111111111111", resultado.getTarjetaNumero());
-        assertEquals("ACTIVO", resultado.getTarjetaEstado());
-        assertEquals(1000.0, resultado.getTarjetaCupoTotal());
-        assertEquals(1000.0, resultado.getTarjetaCupoDisponible());
+        assertEquals(cliente, tarjeta.getCliente());
+        assertEquals(1, resultado.tarjetaId());
+        assertEquals("4111111111111111", resultado.tarjetaNumero());
+        assertEquals("ACTIVO", resultado.tarjetaEstado());
+        assertEquals(new BigDecimal("1000.00"), resultado.tarjetaCupoTotal());
+        assertEquals(new BigDecimal("1000.00"), resultado.tarjetaCupoDisponible());
+        verify(cacheTarjetas).invalidarTarjetasDeCliente(clienteId);
     }
 
     @Test
@@ -78,7 +129,7 @@ class TarjetaServiceTest {
         Tarjeta tarjeta = new Tarjeta();
         
         // Mock behavior
-        when(clienteRepository.findById(clienteId)).thenReturn(Optional.empty());
+        when(clienteRepository.buscarPorId(clienteId)).thenReturn(Optional.empty());
 
         // Act & Assert
         Exception exception = assertThrows(RuntimeException.class, () -> {
@@ -89,24 +140,153 @@ class TarjetaServiceTest {
     }
 
     @Test
-    void obtenerTodasLasTarjetas_DebeRetornarListaDeTarjetas() {
+    void registrarTarjeta_DisponibleMayorAlTotal_DebeLanzarExcepcionSinGuardar() {
+        // Arrange
+        Tarjeta tarjeta = new Tarjeta();
+        tarjeta.setTarjetaNumero("4111111111111111");
+        tarjeta.setTarjetaFechaVencimiento("12/2030");
+        tarjeta.setTarjetaFranquicia("VISA");
+        tarjeta.setTarjetaCupoTotal(new BigDecimal("1000.00"));
+        tarjeta.setTarjetaCupoDisponible(new BigDecimal("1500.00"));
+        when(clienteRepository.buscarPorId(1)).thenReturn(Optional.of(new ClienteRespuesta(1, "Test User", "test@gmail.com")));
+
+        // Act & Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> tarjetaService.registrarTarjeta(tarjeta, 1));
+
+        assertEquals("Los cupos son inválidos", exception.getMessage());
+        verify(tarjetaRepository, never()).save(any());
+    }
+
+    @Test
+    void obtenerTarjetasPaginadas_ConMasResultados_DebeRetornarCursorSiguiente() {
         // Arrange
         Tarjeta tarjeta1 = new Tarjeta();
         tarjeta1.setTarjetaId(1);
         Tarjeta tarjeta2 = new Tarjeta();
         tarjeta2.setTarjetaId(2);
-        List<Tarjeta> tarjetas = Arrays.asList(tarjeta1, tarjeta2);
+        Tarjeta tarjeta3 = new Tarjeta();
+        tarjeta3.setTarjetaId(3);
+        List<TarjetaRespuesta> tarjetas = Stream.of(tarjeta1, tarjeta2, tarjeta3).map(TarjetaRespuesta::de).toList();
 
-        when(tarjetaRepository.findAll()).thenReturn(tarjetas);
+        when(tarjetaRepository.findRespuestasDesde(0, Limit.of(3))).thenReturn(tarjetas);
 
         // Act
-        List<Tarjeta> resultado = tarjetaService.obtenerTodasLasTarjetas();
+        PaginaCursor<TarjetaRespuesta> resultado = tarjetaService.obtenerTarjetasPaginadas(null, 2);
 
         // Assert
         assertNotNull(resultado);
-        assertEquals(2, resultado.size());
-        assertEquals(tarjeta1.getTarjetaId(), resultado.get(0).getTarjetaId());
-        assertEquals(tarjeta2.getTarjetaId(), resultado.get(1).getTarjetaId());
+        assertEquals(2, resultado.contenido().size());
+        assertEquals(tarjeta1.getTarjetaId(), resultado.contenido().get(0).tarjetaId());
+        assertEquals(tarjeta2.getTarjetaId(), resultado.contenido().get(1).tarjetaId());
+        assertEquals(2, resultado.siguiente());
+    }
+
+    @Test
+    void obtenerTarjetasPaginadas_UltimaPagina_DebeRetornarCursorNulo() {
+        // Arrange
+        Tarjeta tarjeta = new Tarjeta();
+        tarjeta.setTarjetaId(7);
+
+        when(tarjetaRepository.findRespuestasDesde(5, Limit.of(3))).thenReturn(List.of(TarjetaRespuesta.de(tarjeta)));
+
+        // Act
+        PaginaCursor<TarjetaRespuesta> resultado = tarjetaService.obtenerTarjetasPaginadas(5, 2);
+
+        // Assert
+        assertEquals(1, resultado.contenido().size());
+        assertNull(resultado.siguiente());
+    }
+
+    @Test
+    void buscarTarjetas_ConMasResultados_DebeRetornarCursorSiguiente() {
+        // Arrange
+        FiltroTarjetas filtro = new FiltroTarjetas("ACTIVO", "VISA", "01/2026", "12/2027", null, null, new BigDecimal("100.00"), null, null);
+        Tarjeta tarjeta1 = new Tarjeta();
+        tarjeta1.setTarjetaId(10);
+        Tarjeta tarjeta2 = new Tarjeta();
+        tarjeta2.setTarjetaId(20);
+        when(tarjetaRepository.buscar(filtro, 5, 2))
+                .thenReturn(List.of(TarjetaRespuesta.de(tarjeta1), TarjetaRespuesta.de(tarjeta2)));
+
+        // Act
+        PaginaCursor<TarjetaRespuesta> resultado = tarjetaService.buscarTarjetas(filtro, 5, 1);
+
+        // Assert
+        assertEquals(1, resultado.contenido().size());
+        assertEquals(10, resultado.siguiente());
+    }
+
+    @Test
+    void buscarTarjetas_ConVencimientoInvalido_DebeLanzarExcepcion() {
+        // Arrange
+        FiltroTarjetas filtro = new FiltroTarjetas(null, null, null, "2027-12", null, null, null, null, null);
+
+        // Act & Assert
+        Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> tarjetaService.buscarTarjetas(filtro, null, 50));
+
+        assertEquals("La fecha de vencimiento debe tener el formato MM/AAAA", exception.getMessage());
+        verifyNoInteractions(tarjetaRepository);
+    }
+
+    @Test
+    void obtenerAgregados_PorEstado_DebeUsarLaConsultaAgrupadaPorEstado() {
+        // Arrange
+        List<AgregadoTarjetas> agregados = List.of(
+                new AgregadoTarjetas("ACTIVO", 3L, new BigDecimal("3000.00"), new BigDecimal("2500.00"), new BigDecimal("500.00")),
+                new AgregadoTarjetas("INACTIVO", 1L, new BigDecimal("1000.00"), new BigDecimal("1000.00"), new BigDecimal("0.00")));
+        when(tarjetaRepository.agregarPorEstado()).thenReturn(agregados);
+
+        // Act
+        List<AgregadoTarjetas> resultado = tarjetaService.obtenerAgregados(AgrupacionTarjetas.ESTADO);
+
+        // Assert
+        assertEquals(agregados, resultado);
+        verify(tarjetaRepository, never()).agregarPorFranquicia();
+        verify(tarjetaRepository, never()).findAll();
+    }
+
+    @Test
+    void obtenerAgregadosPorCliente_DebePaginarPorCursorSobreElIdDelCliente() {
+        // Arrange
+        when(tarjetaRepository.agregarPorCliente(10, Limit.of(3))).thenReturn(List.of(
+                new AgregadoCliente(11, 1L, new BigDecimal("100.00"), new BigDecimal("100.00"), new BigDecimal("0.00")),
+                new AgregadoCliente(15, 2L, new BigDecimal("300.00"), new BigDecimal("200.00"), new BigDecimal("100.00")),
+                new AgregadoCliente(20, 1L, new BigDecimal("50.00"), new BigDecimal("50.00"), new BigDecimal("0.00"))));
+
+        // Act
+        PaginaCursor<AgregadoCliente> pagina = tarjetaService.obtenerAgregadosPorCliente(10, 2);
+
+        // Assert
+        assertEquals(2, pagina.contenido().size());
+        assertEquals(15, pagina.siguiente());
+    }
+
+    @Test
+    void obtenerAgregados_PorCliente_DebeRechazarLaConsultaCompleta() {
+        assertThrows(IllegalArgumentException.class, () -> tarjetaService.obtenerAgregados(AgrupacionTarjetas.CLIENTE));
+        verifyNoInteractions(tarjetaRepository);
+    }
+
+    @Test
+    void exportarTarjetasConClientes_DebeEscribirUnaLineaJsonPorTarjeta() throws Exception {
+        // Arrange
+        TarjetaConCliente fila1 = new TarjetaConCliente(1, "4111111111111111", "12/2030", "VISA", "ACTIVO",
+                new BigDecimal("1000.00"), new BigDecimal("1000.00"), new BigDecimal("0.00"), 1, "Test User", "test@gmail.com");
+        TarjetaConCliente fila2 = new TarjetaConCliente(2, "5500000000000004", "01/2031", "MASTERCARD", "ACTIVO",
+                new BigDecimal("500.00"), new BigDecimal("100.00"), new BigDecimal("400.00"), 1, "Test User", "test@gmail.com");
+        when(tarjetaRepository.streamTarjetasConClientes()).thenReturn(Stream.of(fila1, fila2));
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        // Act
+        tarjetaService.exportarTarjetasConClientes(salida);
+
+        // Assert
+        String[] lineas = salida.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lineas.length);
+        assertEquals(fila1, objectMapper.readValue(lineas[0], TarjetaConCliente.class));
+        assertEquals(fila2, objectMapper.readValue(lineas[1], TarjetaConCliente.class));
     }
 
     @Test
@@ -115,17 +295,17 @@ class TarjetaServiceTest {
         Integer clienteId = 1;
         Tarjeta tarjeta1 = new Tarjeta();
         tarjeta1.setTarjetaId(1);
-        List<Tarjeta> tarjetas = Arrays.asList(tarjeta1);
+        List<TarjetaRespuesta> tarjetas = List.of(TarjetaRespuesta.de(tarjeta1));
 
-        when(tarjetaRepository.findByClienteClienteId(clienteId)).thenReturn(tarjetas);
+        when(tarjetasClienteService.obtenerTarjetasPorClienteId(clienteId)).thenReturn(tarjetas);
 
         // Act
-        List<Tarjeta> resultado = tarjetaService.obtenerTarjetasPorClienteId(clienteId);
+        List<TarjetaRespuesta> resultado = tarjetaService.obtenerTarjetasPorClienteId(clienteId);
 
         // Assert
         assertNotNull(resultado);
         assertEquals(1, resultado.size());
-        assertEquals(tarjeta1.getTarjetaId(), resultado.get(0).getTarjetaId());
+        assertEquals(tarjeta1.getTarjetaId(), resultado.get(0).tarjetaId());
     }
 
     @Test
@@ -135,42 +315,229 @@ class TarjetaServiceTest {
         Tarjeta tarjeta = new Tarjeta();
         tarjeta.setTarjetaId(tarjetaId);
 
-        when(tarjetaRepository.findById(tarjetaId)).thenReturn(Optional.of(tarjeta));
+        when(tarjetaRepository.findRespuestaPorId(tarjetaId)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         // Act
-        Optional<Tarjeta> resultado = tarjetaService.obtenerTarjetaPorId(tarjetaId);
+        Optional<TarjetaRespuesta> resultado = tarjetaService.obtenerTarjetaPorId(tarjetaId);
 
         // Assert
         assertTrue(resultado.isPresent());
-        assertEquals(tarjetaId, resultado.get().getTarjetaId());
+        assertEquals(tarjetaId, resultado.get().tarjetaId());
+    }
+
+    @Test
+    void emitirTarjetasEnLote_DebeResolverClientesUnaVezYReportarCadaFila() {
+        // Arrange
+        List<EmisionTarjeta> emisiones = List.of(
+                new EmisionTarjeta(1, "4111111111111111", "12/2030", "VISA", null, new BigDecimal("1000.00"), new BigDecimal("1000.00")),
+                new EmisionTarjeta(2, "5500000000000004", "12/2030", "MASTERCARD", null, new BigDecimal("500.00"), new BigDecimal("500.00")),
+                new EmisionTarjeta(99, "4000000000000002", "12/2030", "VISA", null, new BigDecimal("500.00"), new BigDecimal("500.00")),
+                new EmisionTarjeta(1, "4111111111111111", "12/2030", "VISA", null, new BigDecimal("1000.00"), new BigDecimal("1000.00")),
+                new EmisionTarjeta(2, "4012888888881881", "12/2030", "VISA", null, new BigDecimal("100.00"), new BigDecimal("200.00")));
+
+        when(clienteRepository.findIdsExistentes(List.of(1, 2, 99))).thenReturn(List.of(1, 2));
+        when(tarjetaRepository.findNumerosExistentes(List.of("4111111111111111", "5500000000000004")))
+                .thenReturn(List.of("5500000000000004"));
+        when(tarjetaLoteRepository.insertarLote(List.of(emisiones.get(0)))).thenReturn(new int[]{1});
+
+        // Act
+        ResultadoLote resultado = tarjetaService.emitirTarjetasEnLote(emisiones);
+
+        // Assert
+        assertEquals(5, resultado.procesadas());
+        assertEquals(1, resultado.exitosas());
+        assertEquals(ResultadoLote.REGISTRADO, resultado.filas().get(0).estado());
+        assertEquals(ResultadoLote.DUPLICADO, resultado.filas().get(1).estado());
+        assertEquals("Cliente no encontrado con ID: 99", resultado.filas().get(2).mensaje());
+        assertEquals(ResultadoLote.DUPLICADO, resultado.filas().get(3).estado());
+        assertEquals("Los cupos son inválidos", resultado.filas().get(4).mensaje());
+        verify(clienteRepository, times(1)).findIdsExistentes(any());
+        verify(clienteRepository, never()).buscarPorId(any());
+        verify(transactionTemplate, times(1)).executeWithoutResult(any());
+    }
+
+    @Test
+    void emitirTarjetasEnLote_ClienteEliminadoAntesDelInsert_DebeReportarRechazoYNoDuplicado() {
+        // Arrange
+        List<EmisionTarjeta> emisiones = List.of(
+                new EmisionTarjeta(1, "4111111111111111", "12/2030", "VISA", null, new BigDecimal("1000.00"), new BigDecimal("1000.00")),
+                new EmisionTarjeta(2, "5500000000000004", "12/2030", "MASTERCARD", null, new BigDecimal("500.00"), new BigDecimal("500.00")));
+
+        when(clienteRepository.findIdsExistentes(List.of(1, 2))).thenReturn(List.of(1, 2));
+        when(tarjetaRepository.findNumerosExistentes(any())).thenReturn(List.of());
+        // El cliente 2 se elimino entre la validacion y el INSERT: la FK falla solo en esa fila
+        when(tarjetaLoteRepository.insertarLote(emisiones))
+                .thenReturn(new int[]{InsercionLote.INSERTADA, InsercionLote.FALLIDA});
+
+        // Act
+        ResultadoLote resultado = tarjetaService.emitirTarjetasEnLote(emisiones);
+
+        // Assert
+        assertEquals(ResultadoLote.REGISTRADO, resultado.filas().get(0).estado());
+        assertEquals(ResultadoLote.RECHAZADO, resultado.filas().get(1).estado());
+        assertEquals("La base de datos rechazó la fila", resultado.filas().get(1).mensaje());
     }
 
     @Test
-    void actualizarTarjeta_TarjetaExistente_DebeActualizarTarjeta() {
+    void actualizarParcialmente_ConCambios_DebeEjecutarUnSoloUpdateSinLeerLaEntidad() {
         // Arrange
         Integer tarjetaId = 1;
-        Tarjeta tarjetaExistente = new Tarjeta();
-        tarjetaExistente.setTarjetaId(tarjetaId);
-        tarjetaExistente.setTarjetaEstado("ACTIVO");
-        tarjetaExistente.setTarjetaCupoTotal(1000.0);
-        tarjetaExistente.setTarjetaCupoDisponible(1000.0);
+        CambiosTarjeta cambios = new CambiosTarjeta(null, null, "MASTERCARD", null, null, null);
+        Tarjeta tarjeta = new Tarjeta();
+        tarjeta.setTarjetaId(tarjetaId);
+        tarjeta.setTarjetaFranquicia("MASTERCARD");
+
+        when(tarjetaRepository.actualizarCampos(tarjetaId, cambios)).thenReturn(1);
+        when(tarjetaRepository.findRespuestaPorId(tarjetaId)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
+
+        // Act
+        Optional<TarjetaRespuesta> resultado = tarjetaService.actualizarParcialmente(tarjetaId, cambios);
+
+        // Assert
+        assertTrue(resultado.isPresent());
+        assertEquals("MASTERCARD", resultado.get().tarjetaFranquicia());
+        verify(tarjetaRepository, never()).findById(any());
+        verify(tarjetaRepository, never()).save(any());
+        verify(cacheTarjetas).invalidarTarjeta(tarjetaId);
+    }
+
+    @Test
+    void actualizarParcialmente_TarjetaInexistente_DebeRetornarVacio() {
+        // Arrange
+        CambiosTarjeta cambios = new CambiosTarjeta(null, null, null, "BLOQUEADO", null, null);
+        when(tarjetaRepository.actualizarCampos(999, cambios)).thenReturn(0);
+        when(tarjetaRepository.findRespuestaPorId(999)).thenReturn(Optional.empty());
+
+        // Act
+        Optional<TarjetaRespuesta> resultado = tarjetaService.actualizarParcialmente(999, cambios);
+
+        // Assert
+        assertTrue(resultado.isEmpty());
+        verify(cacheTarjetas, never()).invalidarTarjeta(any());
+    }
+
+    @Test
+    void actualizarParcialmente_ConVersionDesactualizada_DebeLanzarConflictoDeVersion() {
+        // Arrange
+        CambiosTarjeta cambios = new CambiosTarjeta(null, null, null, "BLOQUEADO", null, null, 3L);
+        Tarjeta guardada = new Tarjeta();
+        guardada.setTarjetaId(1);
+        guardada.setTarjetaVersion(4L);
+        when(tarjetaRepository.actualizarCampos(1, cambios)).thenReturn(0);
+        when(tarjetaRepository.findRespuestaPorId(1)).thenReturn(Optional.of(TarjetaRespuesta.de(guardada)));
+
+        // Act & Assert
+        assertThrows(OptimisticLockingFailureException.class, () -> tarjetaService.actualizarParcialmente(1, cambios));
+        assertEquals(1.0, registry.get("cartmaster.tarjetas.conflictos.version").counter().count());
+        verify(cacheTarjetas, never()).invalidarTarjeta(any());
+    }
+
+    @Test
+    void actualizarParcialmente_ConCuposInvalidos_NoDebeEjecutarUpdate() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> tarjetaService.actualizarParcialmente(1,
+                new CambiosTarjeta(null, null, null, null, new BigDecimal("-1.00"), null)));
+        assertThrows(IllegalArgumentException.class, () -> tarjetaService.actualizarParcialmente(1,
+                new CambiosTarjeta(null, null, null, null, null, new BigDecimal("10.005"))));
+        assertThrows(IllegalArgumentException.class, () -> tarjetaService.actualizarParcialmente(1,
+                new CambiosTarjeta(null, null, null, null, new BigDecimal("1000.00"), new BigDecimal("1500.00"))));
+        verify(tarjetaRepository, never()).actualizarCampos(any(), any());
+    }
+
+    @Test
+    void actualizarParcialmente_ConVencimientoSinFormato_NoDebeEjecutarUpdate() {
+        // Act & Assert
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () ->
+                tarjetaService.actualizarParcialmente(1, new CambiosTarjeta(null, "2030-12", null, null, null, null)));
+        assertEquals("La fecha de vencimiento debe tener el formato MM/AAAA", error.getMessage());
+        verify(tarjetaRepository, never()).actualizarCampos(any(), any());
+    }
+
+    @Test
+    void actualizarParcialmente_DisponibleMayorAlTotalGuardado_DebeRechazarse() {
+        // Arrange: el UPDATE compara el disponible recibido con el total guardado y no afecta filas
+        CambiosTarjeta cambios = new CambiosTarjeta(null, null, null, null, null, new BigDecimal("9000.00"));
+        Tarjeta guardada = new Tarjeta();
+        guardada.setTarjetaId(1);
+        when(tarjetaRepository.actualizarCampos(1, cambios)).thenReturn(0);
+        when(tarjetaRepository.findRespuestaPorId(1)).thenReturn(Optional.of(TarjetaRespuesta.de(guardada)));
 
+        // Act & Assert
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> tarjetaService.actualizarParcialmente(1, cambios));
+        assertEquals("Los cupos son inválidos", error.getMessage());
+        verify(cacheTarjetas, never()).invalidarTarjeta(any());
+    }
+
+    @Test
+    void actualizarTarjeta_ConVersionEnElCuerpo_DebeCondicionarElUpdate() {
+        // Arrange
         Tarjeta tarjetaActualizada = new Tarjeta();
         tarjetaActualizada.setTarjetaEstado("BLOQUEADO");
-        tarjetaActualizada.setTarjetaCupoTotal(2000.0);
-        tarjetaActualizada.setTarjetaCupoDisponible(2000.0);
+        tarjetaActualizada.setTarjetaVersion(7L);
+        CambiosTarjeta esperados = new CambiosTarjeta(null, null, null, "BLOQUEADO", null, null, 7L);
+        when(tarjetaRepository.actualizarCampos(1, esperados)).thenReturn(1);
+
+        // Act
+        tarjetaService.actualizarTarjeta(1, tarjetaActualizada);
 
-        when(tarjetaRepository.findById(tarjetaId)).thenReturn(Optional.of(tarjetaExistente));
-        when(tarjetaRepository.save(any(Tarjeta.class))).thenReturn(tarjetaExistente);
+        // Assert
+        verify(tarjetaRepository).actualizarCampos(1, esperados);
+    }
+
+    @Test
+    void actualizarParcialmente_SinCambios_NoDebeEjecutarUpdate() {
+        // Arrange
+        Tarjeta tarjeta = new Tarjeta();
+        tarjeta.setTarjetaId(1);
+        when(tarjetaRepository.findRespuestaPorId(1)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         // Act
-        Optional<Tarjeta> resultado = tarjetaService.actualizarTarjeta(tarjetaId, tarjetaActualizada);
+        Optional<TarjetaRespuesta> resultado = tarjetaService.actualizarParcialmente(1,
+                new CambiosTarjeta(null, null, null, null, null, null));
 
         // Assert
         assertTrue(resultado.isPresent());
-        assertEquals("BLOQUEADO", resultado.get().getTarjetaEstado());
-        assertEquals(2000.0, resultado.get().getTarjetaCupoTotal());
-        assertEquals(2000.0, resultado.get().getTarjetaCupoDisponible());
+        verify(tarjetaRepository, never()).actualizarCampos(any(), any());
+    }
+
+    @Test
+    void actualizarTarjeta_DebeEnviarSoloEstadoYCupos() {
+        // Arrange
+        Integer tarjetaId = 1;
+        Tarjeta tarjetaActualizada = new Tarjeta();
+        tarjetaActualizada.setTarjetaNumero("4111111111111111");
+        tarjetaActualizada.setTarjetaEstado("BLOQUEADO");
+        tarjetaActualizada.setTarjetaCupoTotal(new BigDecimal("2000.00"));
+        tarjetaActualizada.setTarjetaCupoDisponible(new BigDecimal("2000.00"));
+
+        CambiosTarjeta esperados = new CambiosTarjeta(null, null, null, "BLOQUEADO", new BigDecimal("2000.00"), new BigDecimal("2000.00"));
+        when(tarjetaRepository.actualizarCampos(tarjetaId, esperados)).thenReturn(1);
+        when(tarjetaRepository.findRespuestaPorId(tarjetaId)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjetaActualizada)));
+
+        // Act
+        Optional<TarjetaRespuesta> resultado = tarjetaService.actualizarTarjeta(tarjetaId, tarjetaActualizada);
+
+        // Assert
+        assertTrue(resultado.isPresent());
+        assertEquals("BLOQUEADO", resultado.get().tarjetaEstado());
+        verify(tarjetaRepository).actualizarCampos(tarjetaId, esperados);
+    }
+
+    @Test
+    void actualizarDatosGeneralesTarjeta_NoDebeEnviarCupos() {
+        // Arrange
+        Integer tarjetaId = 1;
+        Tarjeta tarjetaActualizada = new Tarjeta();
+        tarjetaActualizada.setTarjetaFranquicia("VISA");
+        tarjetaActualizada.setTarjetaEstado("BLOQUEADO");
+        tarjetaActualizada.setTarjetaCupoTotal(new BigDecimal("5000.00"));
+
+        // Act
+        tarjetaService.actualizarDatosGeneralesTarjeta(tarjetaId, tarjetaActualizada);
+
+        // Assert
+        verify(tarjetaRepository).actualizarCampos(tarjetaId, new CambiosTarjeta(null, null, "VISA", "BLOQUEADO", null, null));
     }
 
     @Test
@@ -179,36 +546,147 @@ class TarjetaServiceTest {
         Integer tarjetaId = 1;
         Tarjeta tarjeta = new Tarjeta();
         tarjeta.setTarjetaId(tarjetaId);
-        tarjeta.setTarjetaEstado("ACTIVO");
+        tarjeta.setTarjetaEstado("INACTIVO");
 
-        when(tarjetaRepository.findById(tarjetaId)).thenReturn(Optional.of(tarjeta));
-        when(tarjetaRepository.save(any(Tarjeta.class))).thenReturn(tarjeta);
+        when(tarjetaRepository.actualizarCampos(tarjetaId, new CambiosTarjeta(null, null, null, "INACTIVO", null, null)))
+                .thenReturn(1);
+        when(tarjetaRepository.findRespuestaPorId(tarjetaId)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         // Act
-        Optional<Tarjeta> resultado = tarjetaService.inactivarTarjeta(tarjetaId);
+        Optional<TarjetaRespuesta> resultado = tarjetaService.inactivarTarjeta(tarjetaId);
 
         // Assert
         assertTrue(resultado.isPresent());
-        assertEquals("INACTIVO", resultado.get().getTarjetaEstado());
+        assertEquals("INACTIVO", resultado.get().tarjetaEstado());
     }
 
     @Test
     void actualizarCupoDisponible_TarjetaExistente_DebeActualizarCupo() {
         // Arrange
         Integer tarjetaId = 1;
-        double nuevoCupoDisponible = 2000.0;
+        BigDecimal nuevoCupoDisponible = new BigDecimal("2000.00");
         Tarjeta tarjeta = new Tarjeta();
         tarjeta.setTarjetaId(tarjetaId);
-        tarjeta.setTarjetaCupoDisponible(1000.0);
+        tarjeta.setTarjetaCupoDisponible(nuevoCupoDisponible);
 
-        when(tarjetaRepository.findById(tarjetaId)).thenReturn(Optional.of(tarjeta));
-        when(tarjetaRepository.save(any(Tarjeta.class))).thenReturn(tarjeta);
+        when(tarjetaRepository.actualizarCampos(tarjetaId, new CambiosTarjeta(null, null, null, null, null, nuevoCupoDisponible)))
+                .thenReturn(1);
+        when(tarjetaRepository.findRespuestaPorId(tarjetaId)).thenReturn(Optional.of(TarjetaRespuesta.de(tarjeta)));
 
         // Act
-        Optional<Tarjeta> resultado = tarjetaService.actualizarCupoDisponible(tarjetaId, nuevoCupoDisponible);
+        Optional<TarjetaRespuesta> resultado = tarjetaService.actualizarCupoDisponible(tarjetaId, nuevoCupoDisponible, null);
 
         // Assert
         assertTrue(resultado.isPresent());
-        assertEquals(nuevoCupoDisponible, resultado.get().getTarjetaCupoDisponible());
+        assertEquals(nuevoCupoDisponible, resultado.get().tarjetaCupoDisponible());
+    }
+
+    @Test
+    void cambiarEstadoEnLote_PorIds_DebeActualizarPorBloques() {
+        // Arrange
+        ReflectionTestUtils.setField(tarjetaService, "tamanoBloque", 2);
+        CambioEstadoLote solicitud = new CambioEstadoLote("BLOQUEADO", List.of(1, 2, 3, 2), null, null, null);
+        when(tarjetaRepository.cambiarEstado(List.of(1, 2), "BLOQUEADO")).thenReturn(2);
+        when(tarjetaRepository.cambiarEstado(List.of(3), "BLOQUEADO")).thenReturn(0);
+
+        // Act
+        int afectadas = tarjetaService.cambiarEstadoEnLote(solicitud);
+
+        // Assert
+        assertEquals(2, afectadas);
+        verify(tarjetaRepository, times(2)).cambiarEstado(any(), any());
+        verify(cacheTarjetas).invalidarTodasLasTarjetas();
+    }
+
+    @Test
+    void cambiarEstadoEnLote_PorFiltros_DebeRecorrerConCursor() {
+        // Arrange
+        ReflectionTestUtils.setField(tarjetaService, "tamanoBloque", 2);
+        CambioEstadoLote solicitud = new CambioEstadoLote("INACTIVO", null, "VISA", "06/2026", null);
+        when(tarjetaRepository.buscarIdsParaCambioEstado(solicitud, 0, 2)).thenReturn(List.of(4, 9));
+        when(tarjetaRepository.buscarIdsParaCambioEstado(solicitud, 9, 2)).thenReturn(List.of(15));
+        when(tarjetaRepository.cambiarEstado(List.of(4, 9), "INACTIVO")).thenReturn(2);
+        when(tarjetaRepository.cambiarEstado(List.of(15), "INACTIVO")).thenReturn(1);
+
+        // Act
+        int afectadas = tarjetaService.cambiarEstadoEnLote(solicitud);
+
+        // Assert
+        assertEquals(3, afectadas);
+        verify(tarjetaRepository, times(2)).buscarIdsParaCambioEstado(any(), any(), anyInt());
+        verify(cacheTarjetas).invalidarTodasLasTarjetas();
+    }
+
+    @Test
+    void cambiarEstadoEnLote_SinIdsNiFiltros_DebeLanzarExcepcion() {
+        // Act & Assert
+        Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> tarjetaService.cambiarEstadoEnLote(new CambioEstadoLote("BLOQUEADO", List.of(), null, null, null)));
+
+        assertEquals("Debe indicar una lista de tarjetas o al menos un filtro, no ambos", exception.getMessage());
+        verifyNoInteractions(tarjetaRepository, cacheTarjetas);
+    }
+
+    @Test
+    void cambiarEstadoEnLote_ConFechaInvalida_DebeLanzarExcepcion() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> tarjetaService.cambiarEstadoEnLote(new CambioEstadoLote("BLOQUEADO", null, null, "2026-06", null)));
+        verifyNoInteractions(tarjetaRepository);
+    }
+
+    @Test
+    void consumirCupo_ConCupoSuficiente_DebeRetornarAplicado() {
+        // Arrange
+        when(tarjetaRepository.consumirCupo(1, new BigDecimal("200.00"))).thenReturn(1);
+
+        // Act
+        ResultadoCupo resultado = tarjetaService.consumirCupo(1, new BigDecimal("200.00"));
+
+        // Assert
+        assertEquals(ResultadoCupo.APLICADO, resultado);
+        verify(tarjetaRepository, never()).findEstadoPorId(any());
+        verify(cacheTarjetas).invalidarTarjeta(1);
+    }
+
+    @Test
+    void consumirCupo_SinCupoSuficiente_DebeRetornarCupoInsuficiente() {
+        // Arrange
+        when(tarjetaRepository.consumirCupo(1, new BigDecimal("5000.00"))).thenReturn(0);
+        when(tarjetaRepository.findEstadoPorId(1)).thenReturn(Optional.of("ACTIVO"));
+
+        // Act
+        ResultadoCupo resultado = tarjetaService.consumirCupo(1, new BigDecimal("5000.00"));
+
+        // Assert
+        assertEquals(ResultadoCupo.CUPO_INSUFICIENTE, resultado);
+        verify(cacheTarjetas, never()).invalidarTarjeta(any());
+    }
+
+    @Test
+    void reembolsarCupo_TarjetaInexistente_DebeRetornarNoEncontrada() {
+        // Arrange
+        when(tarjetaRepository.reembolsarCupo(999, new BigDecimal("100.00"))).thenReturn(0);
+        when(tarjetaRepository.findEstadoPorId(999)).thenReturn(Optional.empty());
+
+        // Act
+        ResultadoCupo resultado = tarjetaService.reembolsarCupo(999, new BigDecimal("100.00"));
+
+        // Assert
+        assertEquals(ResultadoCupo.TARJETA_NO_ENCONTRADA, resultado);
+    }
+
+    @Test
+    void reembolsarCupo_TarjetaInactiva_DebeRetornarInactivaYNoCupoInsuficiente() {
+        // Arrange
+        when(tarjetaRepository.reembolsarCupo(1, new BigDecimal("100.00"))).thenReturn(0);
+        when(tarjetaRepository.findEstadoPorId(1)).thenReturn(Optional.of("INACTIVO"));
+
+        // Act
+        ResultadoCupo resultado = tarjetaService.reembolsarCupo(1, new BigDecimal("100.00"));
+
+        // Assert
+        assertEquals(ResultadoCupo.TARJETA_INACTIVA, resultado);
+        verify(cacheTarjetas, never()).invalidarTarjeta(any());
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+-- Esquema de MySQL despues de las migraciones (V2 a V4) para las pruebas con H2 en modo MySQL.
+-- Las columnas generadas usan la sintaxis de H2 (GENERATED ALWAYS AS) en lugar de AS (...) STORED.
+CREATE TABLE administrador (
+    administrador_id INT AUTO_INCREMENT PRIMARY KEY,
+    administrador_correo VARCHAR(255) NOT NULL UNIQUE,
+    administrador_contrasena VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE cliente (
+    cliente_id INT AUTO_INCREMENT PRIMARY KEY,
+    cliente_nombre VARCHAR(255) NOT NULL,
+    cliente_correo VARCHAR(255) NOT NULL UNIQUE,
+    cliente_contrasena VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE tarjeta (
+    tarjeta_id INT AUTO_INCREMENT PRIMARY KEY,
+    tarjeta_numero VARCHAR(16) NOT NULL UNIQUE,
+    tarjeta_fecha_vencimiento VARCHAR(7) NOT NULL,
+    tarjeta_franquicia VARCHAR(255) NOT NULL,
+    tarjeta_estado VARCHAR(255) NOT NULL,
+    tarjeta_cupo_total DECIMAL(15, 2) NOT NULL,
+    tarjeta_cupo_disponible DECIMAL(15, 2) NOT NULL,
+    tarjeta_cupo_utilizado DECIMAL(15, 2) GENERATED ALWAYS AS (tarjeta_cupo_total - tarjeta_cupo_disponible),
+    tarjeta_periodo_vencimiento CHAR(6) GENERATED ALWAYS AS
+        (CONCAT(SUBSTRING(tarjeta_fecha_vencimiento, 4, 4), SUBSTRING(tarjeta_fecha_vencimiento, 1, 2))),
+    tarjeta_version BIGINT NOT NULL DEFAULT 0,
+    cliente_id INT NOT NULL,
+    CONSTRAINT fk_tarjeta_cliente FOREIGN KEY (cliente_id) REFERENCES cliente (cliente_id)
+);
+
+CREATE INDEX idx_tarjeta_estado_franquicia ON tarjeta (tarjeta_estado, tarjeta_franquicia);
+CREATE INDEX idx_tarjeta_cliente_estado ON tarjeta (cliente_id, tarjeta_estado);
+CREATE INDEX idx_tarjeta_franquicia_periodo ON tarjeta (tarjeta_franquicia, tarjeta_periodo_vencimiento);
+CREATE INDEX idx_tarjeta_periodo_vencimiento ON tarjeta (tarjeta_periodo_vencimiento);